@@ -0,0 +1,44 @@
+package com.cis.gorecipe.controller;
+
+import com.cis.gorecipe.util.MetricsSource;
+import io.swagger.annotations.ApiOperation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class exposes the runtime counters (cache hit rates, queue depths, etc.) of GoRecipe's internal components
+ */
+@RestController
+@RequestMapping("/api/metrics")
+public class MetricsController {
+
+    /**
+     * Every component that publishes metrics
+     */
+    private final ObjectProvider<MetricsSource> metricsSources;
+
+    public MetricsController(ObjectProvider<MetricsSource> metricsSources) {
+        this.metricsSources = metricsSources;
+    }
+
+    /**
+     * @return a snapshot of every component's counters, grouped by component name
+     */
+    @GetMapping("/")
+    @ApiOperation(value = "Fetch a snapshot of the runtime counters of GoRecipe's internal components")
+    public ResponseEntity<Map<String, Map<String, Number>>> getMetrics() {
+
+        Map<String, Map<String, Number>> metrics = new TreeMap<>();
+
+        metricsSources.orderedStream()
+                .forEach(source -> metrics.put(source.getMetricsName(), source.getMetrics()));
+
+        return ResponseEntity.ok(metrics);
+    }
+}
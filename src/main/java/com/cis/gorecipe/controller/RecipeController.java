@@ -1,28 +1,56 @@
 package com.cis.gorecipe.controller;
 
+import com.cis.gorecipe.dto.ExploreSnapshot;
+import com.cis.gorecipe.dto.RecipeMatch;
+import com.cis.gorecipe.dto.RecipeSummary;
+import com.cis.gorecipe.exception.FoodImageNotFoundException;
 import com.cis.gorecipe.exception.RecipeNotFoundException;
+import com.cis.gorecipe.exception.SpoonacularQuotaExceededException;
+import com.cis.gorecipe.exception.SpoonacularUnavailableException;
 import com.cis.gorecipe.exception.UserNotFoundException;
+import com.cis.gorecipe.model.FoodImage;
 import com.cis.gorecipe.model.Ingredient;
 import com.cis.gorecipe.model.Recipe;
 import com.cis.gorecipe.model.User;
 import com.cis.gorecipe.repository.DietaryRestrictionRepository;
+import com.cis.gorecipe.repository.FoodImageRepository;
 import com.cis.gorecipe.repository.IngredientRepository;
 import com.cis.gorecipe.repository.RecipeRepository;
 import com.cis.gorecipe.repository.UserRepository;
+import com.cis.gorecipe.service.ExploreService;
+import com.cis.gorecipe.service.RecipeExportService;
+import com.cis.gorecipe.service.RecipeIngestService;
+import com.cis.gorecipe.service.RecipeClassificationService;
+import com.cis.gorecipe.service.RecipeSearchService;
 import com.cis.gorecipe.service.SpoonacularService;
+import com.cis.gorecipe.util.IngredientIndex;
 import io.swagger.annotations.ApiOperation;
 import org.hibernate.PropertyValueException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import javax.servlet.http.HttpServletResponse;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -32,6 +60,46 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/recipes")
 public class RecipeController {
 
+    /**
+     * Set on search and recommendation responses that were answered from our own database because the Spoonacular
+     * API could not be used, with the reason as its value
+     */
+    public static final String DEGRADED_HEADER = "X-GoRecipe-Degraded";
+
+    /**
+     * Set on pages of /all that are followed by another page, with the cursor to pass as "after" to get it
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    /**
+     * Set to "local" on search responses that were answered from the local search index without asking the
+     * Spoonacular API
+     */
+    public static final String SOURCE_HEADER = "X-GoRecipe-Source";
+
+    /**
+     * How many recipes a page of /all holds by default, and at most
+     */
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * How many recipes to return when answering from our own database
+     */
+    private static final int FALLBACK_RESULTS = 25;
+
+    /**
+     * The most recipes /cook-with returns
+     */
+    private static final int MAX_COOK_WITH_RESULTS = 100;
+
+    /**
+     * How long clients are asked to wait before trying again when the first explore page hasn't been built, about
+     * as long as building it takes
+     */
+    private static final int EXPLORE_RETRY_AFTER_SECONDS = 5;
+
     /**
      * For logging any errors that occur during runtime (e.g. a recipe is not found)
      */
@@ -59,43 +127,82 @@ public class RecipeController {
      */
     private final SpoonacularService spoonacularService;
 
-    public RecipeController(RecipeRepository recipeRepository, IngredientRepository ingredientRepository,
-                            UserRepository userRepository, DietaryRestrictionRepository dietaryRestrictionRepository,
-                            SpoonacularService spoonacularService) {
-        this.recipeRepository = recipeRepository;
-        this.ingredientRepository = ingredientRepository;
-        this.userRepository = userRepository;
-        this.dietaryRestrictionRepository = dietaryRestrictionRepository;
-        this.spoonacularService = spoonacularService;
-    }
+    /**
+     * Persists the recipes found through the Spoonacular API
+     */
+    private final RecipeIngestService recipeIngestService;
 
-    private List<Recipe> saveRecipes(List<Recipe> recipes) {
+    /**
+     * Serves the precomputed explore page
+     */
+    private final ExploreService exploreService;
 
-        /* a very stupid workaround for ManyToMany relation b/c I don't really understand the best way to use them
-         * save the recipe with no ingredients -> save the ingredients -> save the recipe with ingredients */
-        for (Recipe r : recipes) {
+    /**
+     * Streams the recipe catalog
+     */
+    private final RecipeExportService recipeExportService;
 
-            if (recipeRepository.existsByName(r.getName()))
-                continue;
+    /**
+     * Searches the recipes we have already stored
+     */
+    private final RecipeSearchService recipeSearchService;
 
-            List<Ingredient> i = r.getIngredients();
-            r.setIngredients(new ArrayList<>());
-            recipeRepository.save(r);
-            ingredientRepository.saveAll(i);
-            r.setIngredients(i);
-        }
+    /**
+     * For looking up the ingredients identified in a user's photo
+     */
+    private final FoodImageRepository foodImageRepository;
 
-        recipes.forEach((r) -> {
-            if (!recipeRepository.existsByName(r.getName()))
-                recipeRepository.save(r);
-        });
+    /**
+     * Works out which dietary restrictions recipes added through the API are compatible with
+     */
+    private final RecipeClassificationService recipeClassificationService;
 
-        recipes = recipeRepository.findAllByNameIn(recipes
-                .stream()
-                .map(Recipe::getName)
-                .collect(Collectors.toList()));
+    /**
+     * Whether searches try the local search index before the Spoonacular API
+     */
+    private final boolean localSearchFirst;
 
-        return recipes;
+    /**
+     * How many local results a search needs to be answered without the Spoonacular API
+     */
+    private final int localSearchMinResults;
+
+    /**
+     * The share of a search's words that local results must contain for the search to be answered locally, so
+     * that e.g. "vegan chocolate cake" isn't answered with ten recipes that only mention chocolate
+     */
+    private final double localSearchMinTermCoverage;
+
+    /**
+     * How long an export may stream for, in place of the (much shorter) timeout of other asynchronous requests
+     */
+    private final long exportTimeoutMillis;
+
+    public RecipeController(RecipeRepository recipeRepository, IngredientRepository ingredientRepository,
+                            UserRepository userRepository, DietaryRestrictionRepository dietaryRestrictionRepository,
+                            SpoonacularService spoonacularService, RecipeIngestService recipeIngestService,
+                            ExploreService exploreService, RecipeExportService recipeExportService,
+                            RecipeSearchService recipeSearchService, FoodImageRepository foodImageRepository,
+                            RecipeClassificationService recipeClassificationService,
+                            @Value("${recipes.search.local-first:true}") boolean localSearchFirst,
+                            @Value("${recipes.search.local-min-results:10}") int localSearchMinResults,
+                            @Value("${recipes.search.local-min-term-coverage:1.0}") double localSearchMinTermCoverage,
+                            @Value("${recipes.export.timeout-ms:3600000}") long exportTimeoutMillis) {
+        this.recipeRepository = recipeRepository;
+        this.ingredientRepository = ingredientRepository;
+        this.userRepository = userRepository;
+        this.dietaryRestrictionRepository = dietaryRestrictionRepository;
+        this.spoonacularService = spoonacularService;
+        this.recipeIngestService = recipeIngestService;
+        this.exploreService = exploreService;
+        this.recipeExportService = recipeExportService;
+        this.recipeSearchService = recipeSearchService;
+        this.foodImageRepository = foodImageRepository;
+        this.recipeClassificationService = recipeClassificationService;
+        this.localSearchFirst = localSearchFirst;
+        this.localSearchMinResults = localSearchMinResults;
+        this.localSearchMinTermCoverage = localSearchMinTermCoverage;
+        this.exportTimeoutMillis = exportTimeoutMillis;
     }
 
     /**
@@ -105,7 +212,9 @@ public class RecipeController {
     @PostMapping("/")
     public ResponseEntity<Recipe> addRecipe(@RequestBody Recipe recipe) {
         try {
+            recipeClassificationService.classify(List.of(recipe));
             recipe = recipeRepository.save(recipe);
+            recipeSearchService.index(List.of(recipe));
             return ResponseEntity.ok().body(recipe);
 
             /* if the posted data is missing values that are required
@@ -126,18 +235,33 @@ public class RecipeController {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
 
         recipeRepository.deleteById(id);
+        recipeSearchService.remove(id);
+
+        /* cached search results may still carry the recipe's ID */
+        spoonacularService.clearCache();
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
     /**
-     * @param id the ID of the recipe to be fetched
+     * @param id the ID of the recipe to be fetched, or the provisional ID of a recipe that was returned by a search
+     *           before it was persisted
      * @return the recipe object that has been requested
      */
     @GetMapping("/{id}")
     public ResponseEntity<Recipe> getRecipe(@PathVariable Long id) {
 
+        /* search results may carry a provisional ID while they wait to be persisted */
+        if (id < 0) {
+            Recipe provisional = recipeIngestService.findProvisional(id);
+
+            if (provisional == null)
+                throw new RecipeNotFoundException(id);
+
+            return ResponseEntity.ok().body(provisional);
+        }
+
         Recipe recipe = recipeRepository
-                .findById(id)
+                .findWithVerboseIngredientsById(id)
                 .orElseThrow(() ->
                         new RecipeNotFoundException("Unable to find user " + id)
                 );
@@ -146,12 +270,65 @@ public class RecipeController {
     }
 
     /**
-     * @return a list of all recipes in the database
+     * @param after  the cursor from the previous page's X-Next-Cursor header (omit for the first page)
+     * @param size   how many recipes to return (at most 200)
+     * @param detail whether to return full recipes rather than summaries (id, name, prepTime and imageURL)
+     * @param userId the optional ID of a user; only recipes compatible with their dietary restrictions are listed
+     * @return a page of the recipes in the database in ID order, with an X-Next-Cursor header if there are more
      */
     @GetMapping("/all")
-    public ResponseEntity<List<Recipe>> getAllRecipes() {
+    @ApiOperation(value = "List recipes a page at a time",
+            notes = "Follow the X-Next-Cursor header by passing it as <b>after</b> until a page comes back without it")
+    public ResponseEntity<List<?>> getAllRecipes(@RequestParam(name = "after", defaultValue = "0") Long after,
+                                                 @RequestParam(name = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+                                                 @RequestParam(name = "detail", defaultValue = "false") boolean detail,
+                                                 @RequestParam(name = "userId", required = false) Long userId) {
+
+        size = Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        int restrictions = restrictionsOf(userId);
+
+        /* ask for one more than the page size to find out whether there is a next page */
+        PageRequest limit = PageRequest.of(0, size + 1);
+
+        List<?> page;
+        List<Long> ids;
+
+        if (detail) {
+            ids = recipeRepository.findIdsAfter(after, restrictions, limit);
+            page = recipeRepository.findAllInOrder(ids);
+        } else {
+            List<RecipeSummary> summaries = recipeRepository.findSummariesAfter(after, restrictions, limit);
+            ids = summaries.stream().map(RecipeSummary::getId).collect(Collectors.toList());
+            page = summaries;
+        }
+
+        if (page.size() <= size)
+            return ResponseEntity.ok().body(page);
 
-        return ResponseEntity.ok().body(recipeRepository.findAll());
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, String.valueOf(ids.get(size - 1)))
+                .body(page.subList(0, size));
+    }
+
+    /**
+     * @param updatedSince an optional ISO-8601 instant (e.g. 2022-04-01T00:00:00Z); only recipes written at or after
+     *                     it are exported
+     * @param response     where every recipe (or every recipe updated since the given time) is written as
+     *                     newline-delimited JSON, streamed straight from the database
+     * @return the export, which runs asynchronously with its own timeout: a large catalog takes far longer than
+     * spring.mvc.async.request-timeout, which would cut the stream off partway through
+     */
+    @GetMapping("/export")
+    @ApiOperation(value = "Export the recipe catalog as newline-delimited JSON",
+            notes = "Pass the updatedAt of the last exported recipe as <b>updatedSince</b> to only fetch what changed")
+    public WebAsyncTask<Void> exportRecipes(@RequestParam(name = "updatedSince", required = false) Instant updatedSince,
+                                            HttpServletResponse response) {
+
+        return new WebAsyncTask<>(exportTimeoutMillis, () -> {
+            response.setContentType("application/x-ndjson");
+            recipeExportService.exportRecipes(updatedSince, response.getOutputStream());
+            return null;
+        });
     }
 
     /**
@@ -159,7 +336,13 @@ public class RecipeController {
      * @param diet         an optional comma separated string of 1 or more diets
      * @param cuisine      an optional comma separated string of 1 or more cuisines
      * @param query        a required string that should occur somewhere in the recipe (either recipe body or title)
-     * @return a list of recipes that meet the searchQuery parameters
+     * @param maxPrepTime  an optional limit on how many minutes the recipes take to prepare
+     * @param userId       the optional ID of a user; only recipes compatible with their dietary restrictions are
+     *                     returned
+     * @return a list of recipes that meet the searchQuery parameters (completed asynchronously, so the request
+     * thread is released while we wait on the Spoonacular API). Recipes we have already stored are searched first,
+     * and if enough of them match, the Spoonacular API isn't asked at all. If the Spoonacular API can't be used,
+     * the best matches from our own database are returned instead
      */
     @GetMapping("/search")
     @ApiOperation(value = "Search for recipes",
@@ -171,12 +354,16 @@ public class RecipeController {
                     " chinese, japanese, korean, vietnamese, thai, indian, british, irish, french, " +
                     "italian, mexican, spanish, middle eastern, jewish, american, cajun, southern," +
                     " greek, german, nordic, eastern european, caribbean, or latin american\n" +
-                    "<b>Ingredients is a comma separated string of 0 or more ingredient names (e.g. tomato, mushroom, etc)")
-    public ResponseEntity<List<Recipe>> searchRecipes(@RequestParam(name = "intolerances", required = false) String intolerances,
-                                                      @RequestParam(name = "diet", required = false) String diet,
-                                                      @RequestParam(name = "cuisine", required = false) String cuisine,
-                                                      @RequestParam(name = "query") String query,
-                                                      @RequestParam(name = "ingredients", required = false) String ingredients) throws Exception {
+                    "<b>Ingredients is a comma separated string of 0 or more ingredient names (e.g. tomato, mushroom, etc)\n" +
+                    "<b>MaxPrepTime</b> is the most minutes a recipe may take to prepare\n" +
+                    "<b>UserId</b> limits the results to recipes compatible with the user's dietary restrictions")
+    public CompletableFuture<ResponseEntity<List<Recipe>>> searchRecipes(@RequestParam(name = "intolerances", required = false) String intolerances,
+                                                                         @RequestParam(name = "diet", required = false) String diet,
+                                                                         @RequestParam(name = "cuisine", required = false) String cuisine,
+                                                                         @RequestParam(name = "query") String query,
+                                                                         @RequestParam(name = "ingredients", required = false) String ingredients,
+                                                                         @RequestParam(name = "maxPrepTime", required = false) Integer maxPrepTime,
+                                                                         @RequestParam(name = "userId", required = false) Long userId) {
 
         Map<String, String> searchParameters = new HashMap<>();
 
@@ -187,72 +374,268 @@ public class RecipeController {
         searchParameters.put("diet", diet);
         searchParameters.put("intolerances", intolerances);
         searchParameters.put("ingredients", ingredients);
+        searchParameters.put("maxReadyTime", maxPrepTime == null ? null : maxPrepTime.toString());
+
+        /* the local index knows nothing about intolerances, so those searches always go to Spoonacular */
+        String localQuery = ingredients == null ? query : query + " " + ingredients;
+        boolean searchLocally = recipeSearchService.isReady();
+        int restrictions = restrictionsOf(userId);
+
+        if (localSearchFirst && searchLocally && intolerances == null) {
+            List<Recipe> local = compatible(localSearch(localQuery, maxPrepTime, cuisine, diet,
+                    localSearchMinTermCoverage), restrictions);
+
+            if (local.size() >= localSearchMinResults)
+                return CompletableFuture.completedFuture(ResponseEntity.ok()
+                        .header(SOURCE_HEADER, "local")
+                        .body(local));
+        }
+
+        return spoonacularService.searchAsync(searchParameters)
+                .handle((recipes, e) -> {
+                    if (e == null)
+                        return ResponseEntity.ok().body(compatible(recipeIngestService.saveRecipes(recipes),
+                                restrictions));
+
+                    return degraded(e, compatible(restrictions, () -> {
+                        List<Recipe> local = searchLocally
+                                ? localSearch(localQuery, maxPrepTime, cuisine, diet, 0)
+                                : new ArrayList<>();
+
+                        /* the index only matches whole words, so fall back to a substring scan */
+                        return local.isEmpty()
+                                ? recipeRepository.findAllInOrder(recipeRepository.searchIdsByNameOrIngredient(query,
+                                PageRequest.of(0, FALLBACK_RESULTS)))
+                                : local;
+                    }));
+                });
+    }
+
+    /**
+     * @param minTermCoverage the share of the query's words each recipe must contain
+     * @return the best matches for a search among the recipes we have already stored
+     */
+    private List<Recipe> localSearch(String query, Integer maxPrepTime, String cuisine, String diet,
+                                     double minTermCoverage) {
+        return recipeRepository.findAllInOrder(recipeSearchService.search(query, maxPrepTime,
+                splitList(cuisine), splitList(diet), FALLBACK_RESULTS, minTermCoverage));
+    }
 
-        List<Recipe> recipes = spoonacularService.search(searchParameters);
+    /**
+     * @param userId the ID of a user, or null
+     * @return the mask of the user's dietary restrictions that recipes can be judged against (0 if no user was
+     * given)
+     */
+    private int restrictionsOf(Long userId) {
 
-        recipes = saveRecipes(recipes);
+        if (userId == null)
+            return 0;
 
-        return ResponseEntity.ok().body(recipes);
+        return knownRestrictions(userRepository.findRestrictionMaskById(userId)
+                .orElseThrow(() ->
+                        new UserNotFoundException(userId)));
+    }
+
+    /**
+     * @param restrictions a mask of a user's dietary restrictions
+     * @return the restrictions in the mask that recipes can be judged against; we have no data for the others
+     * (e.g. a peanut allergy with no disallowed ingredients stored), so filtering by them would hide every recipe
+     */
+    private int knownRestrictions(int restrictions) {
+        return restrictions & recipeClassificationService.knownRestrictions();
+    }
+
+    /**
+     * @param recipes      some recipes
+     * @param restrictions a mask of dietary restrictions
+     * @return the recipes that are compatible with every one of the restrictions, in the same order
+     */
+    private static List<Recipe> compatible(List<Recipe> recipes, int restrictions) {
+
+        if (restrictions == 0)
+            return recipes;
+
+        return recipes.stream()
+                .filter(r -> r.isCompatibleWith(restrictions))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return a supplier of the compatible recipes among those the given supplier returns
+     */
+    private static Supplier<List<Recipe>> compatible(int restrictions, Supplier<List<Recipe>> recipes) {
+        return () -> compatible(recipes.get(), restrictions);
+    }
+
+    /**
+     * @param list a comma separated list (may be null)
+     * @return the trimmed, non-empty items of the list
+     */
+    private static List<String> splitList(String list) {
+
+        if (list == null)
+            return new ArrayList<>();
+
+        return Arrays.stream(list.split(","))
+                .map(String::trim)
+                .filter(item -> !item.isEmpty())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param ingredients an optional comma separated list of the ingredients the user has on hand
+     * @param imageId     the optional ID of a food image whose identified ingredients the user has on hand
+     * @param maxMissing  the most ingredients a recipe may need beyond the ones on hand
+     * @param limit       how many recipes to return (at most 100)
+     * @param userId      the optional ID of a user; only recipes compatible with their dietary restrictions are
+     *                    returned
+     * @return the stored recipes that use any of the ingredients and need at most maxMissing others, with the
+     * fewest missing ingredients first and then the most matched
+     */
+    @GetMapping("/cook-with")
+    @ApiOperation(value = "Find recipes that can be cooked with the ingredients on hand",
+            notes = "Pass the ingredients as a comma separated list, the ID of an uploaded food image, or both. " +
+                    "<b>maxMissing</b> of 0 only returns recipes that need nothing else")
+    public ResponseEntity<List<RecipeMatch>> cookWith(@RequestParam(name = "ingredients", required = false) String ingredients,
+                                                      @RequestParam(name = "imageId", required = false) String imageId,
+                                                      @RequestParam(name = "maxMissing", defaultValue = "0") int maxMissing,
+                                                      @RequestParam(name = "limit", defaultValue = "" + FALLBACK_RESULTS) int limit,
+                                                      @RequestParam(name = "userId", required = false) Long userId) {
+
+        List<String> onHand = splitList(ingredients);
+
+        if (imageId != null) {
+            FoodImage image = foodImageRepository.findById(imageId)
+                    .orElseThrow(() -> new FoodImageNotFoundException(imageId));
+
+            for (Ingredient ingredient : image.getImageOf())
+                onHand.add(ingredient.getName());
+        }
+
+        if (onHand.isEmpty())
+            return ResponseEntity.badRequest().build();
+
+        List<IngredientIndex.Match> matches = recipeSearchService.cookWith(onHand, Math.max(0, maxMissing),
+                Math.max(1, Math.min(limit, MAX_COOK_WITH_RESULTS)));
+
+        List<Recipe> recipes = compatible(recipeRepository.findAllInOrder(matches.stream()
+                .map(IngredientIndex.Match::getKey)
+                .collect(Collectors.toList())), restrictionsOf(userId));
+
+        /* a recipe deleted since it was indexed is missing from the lookup, so pair them up by ID */
+        Map<Long, IngredientIndex.Match> byId = new HashMap<>();
+        for (IngredientIndex.Match match : matches)
+            byId.put(match.getKey(), match);
+
+        return ResponseEntity.ok(recipes.stream()
+                .map(r -> new RecipeMatch(r, byId.get(r.getId()).getMatched(), byId.get(r.getId()).getMissing()))
+                .collect(Collectors.toList()));
     }
 
     /**
      * @param userId the ID of the user whom we would like to recommend recipes to
-     * @return a list of recommended recipes
+     * @return a list of recommended recipes compatible with the user's dietary restrictions (completed
+     * asynchronously), or recipes from our own database that share ingredients with the user's saved recipes if
+     * the Spoonacular API can't be used
      */
     @GetMapping("/recommend/{userId}")
-    public ResponseEntity<List<Recipe>> getRecommendedRecipes(@PathVariable Long userId) throws Exception {
+    public CompletableFuture<ResponseEntity<List<Recipe>>> getRecommendedRecipes(@PathVariable Long userId) {
 
         User user = userRepository.findById(userId)
                 .orElseThrow(() ->
                         new UserNotFoundException(userId));
 
-        List<Recipe> recipes = spoonacularService.recommend(user.getSavedRecipes());
+        int restrictions = knownRestrictions(user.getRestrictionMask());
+
+        return spoonacularService.recommendAsync(user.getSavedRecipes())
+                .handle((recipes, e) -> e == null
+                        ? ResponseEntity.ok().body(compatible(recipeIngestService.saveRecipes(recipes), restrictions))
+                        : degraded(e, () -> {
+                    List<Long> similar = recipeRepository.findIdsBySharedIngredients(userId, restrictions,
+                            PageRequest.of(0, FALLBACK_RESULTS));
+
+                    /* a user without saved recipes just gets our newest recipes */
+                    return recipeRepository.findAllInOrder(similar.isEmpty()
+                            ? recipeRepository.findNewestIds(restrictions, PageRequest.of(0, FALLBACK_RESULTS))
+                            : similar);
+                }));
+    }
+
+    /**
+     * @param e            why the Spoonacular API request failed
+     * @param localResults looks up the best answer we have in our own database
+     * @return the local results, marked as degraded so that clients can tell them apart from a full search
+     */
+    private ResponseEntity<List<Recipe>> degraded(Throwable e, Supplier<List<Recipe>> localResults) {
+
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
 
-        recipes = saveRecipes(recipes);
+        String reason;
+        if (cause instanceof SpoonacularUnavailableException)
+            reason = "spoonacular-unavailable";
+        else if (cause instanceof SpoonacularQuotaExceededException)
+            reason = "spoonacular-quota-exceeded";
+        else
+            reason = "spoonacular-error";
 
-        return ResponseEntity.ok().body(recipes);
+        logger.warn("Answering from the local database: " + cause.getMessage());
+
+        return ResponseEntity.ok()
+                .header(DEGRADED_HEADER, reason)
+                .body(localResults.get());
     }
 
     /**
-     * @return five lists of new recipes in different categories
+     * @param userId the optional ID of a user; only recipes compatible with their dietary restrictions are listed
+     * @return five lists of new recipes in different categories, served from the most recent explore page snapshot,
+     * or 503 with a Retry-After header straight away while the first snapshot is still being built
+     * (the Age header says how many seconds old the snapshot is)
      */
     @GetMapping("/explore")
-    public ResponseEntity<Map<String, List<Recipe>>> getExplorePage() throws Exception {
+    public ResponseEntity<Map<String, List<Recipe>>> getExplorePage(@RequestParam(name = "userId", required = false) Long userId) {
 
-        Map<String, List<Recipe>> explore_info = new HashMap<>();
-        Map<String, String> searchParameters = new HashMap<>();
+        Optional<ExploreSnapshot> built = exploreService.getSnapshot();
 
-        searchParameters.put("instructionsRequired", "True");
-        searchParameters.put("number", "10"); // return 100 results
-        searchParameters.put("type", null);
+        /* nothing to serve until the first explore page has been built */
+        if (built.isEmpty())
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(EXPLORE_RETRY_AFTER_SECONDS))
+                    .build();
 
-        searchParameters.put("diet", "vegan");
-        explore_info.put("vegan", spoonacularService.search(searchParameters));
-        searchParameters.remove("diet");
+        ExploreSnapshot snapshot = built.get();
+        int restrictions = restrictionsOf(userId);
 
-        searchParameters.put("type", "main course");
-        explore_info.put("dinner", spoonacularService.search(searchParameters));
+        Map<String, List<Recipe>> categories = snapshot.getCategories();
+        if (restrictions != 0) {
+            categories = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Recipe>> category : snapshot.getCategories().entrySet())
+                categories.put(category.getKey(), compatible(category.getValue(), restrictions));
+        }
 
-        searchParameters.put("type", "breakfast");
-        explore_info.put("breakfast", spoonacularService.search(searchParameters));
+        return ResponseEntity.ok()
+                .header(HttpHeaders.AGE,
+                        String.valueOf(Duration.between(snapshot.getBuiltAt(), Instant.now()).getSeconds()))
+                .body(categories);
+    }
 
-        searchParameters.put("type", "dessert");
-        explore_info.put("dessert", spoonacularService.search(searchParameters));
+    /**
+     * @return the rebuilt explore page, with the time spent on each category reported in the Server-Timing header
+     */
+    @PostMapping("/explore/refresh")
+    @ApiOperation(value = "Rebuild the explore page snapshot without waiting for the next scheduled refresh")
+    public CompletableFuture<ResponseEntity<Map<String, List<Recipe>>>> refreshExplorePage() {
 
-        explore_info.replaceAll(
-                (k, v) -> saveRecipes(explore_info.get(k))
-        );
+        return exploreService.refresh().thenApply(snapshot -> {
 
-        explore_info.put("quick",
-                recipeRepository.findAll()
-                        .stream()
-                        .filter((recipe) ->
-                                recipe.getPrepTime() <= 30
-                        )
-                        .limit(10)
-                        .collect(Collectors.toList())
-        );
+            String serverTiming = snapshot.getTimings()
+                    .entrySet()
+                    .stream()
+                    .map(e -> e.getKey() + ";dur=" + e.getValue())
+                    .collect(Collectors.joining(", "));
 
-        return ResponseEntity.ok(explore_info);
+            return ResponseEntity.ok()
+                    .header("Server-Timing", serverTiming)
+                    .body(snapshot.getCategories());
+        });
     }
 }
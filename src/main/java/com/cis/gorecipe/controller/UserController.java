@@ -5,10 +5,12 @@ import com.cis.gorecipe.exception.RecipeNotFoundException;
 import com.cis.gorecipe.exception.UserNotFoundException;
 import com.cis.gorecipe.model.Recipe;
 import com.cis.gorecipe.model.RecipeCalendarItem;
+import com.cis.gorecipe.model.RestrictionType;
 import com.cis.gorecipe.model.User;
 import com.cis.gorecipe.repository.IngredientRepository;
 import com.cis.gorecipe.repository.RecipeCalendarItemRepository;
 import com.cis.gorecipe.repository.RecipeRepository;
+import com.cis.gorecipe.repository.SavedRecipeRepository;
 import com.cis.gorecipe.repository.UserRepository;
 import com.cis.gorecipe.service.S3Service;
 import com.cis.gorecipe.util.FileUtil;
@@ -18,6 +20,9 @@ import org.hibernate.PropertyValueException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -28,7 +33,6 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * This class handles the API endpoints related to user account management
@@ -42,6 +46,28 @@ public class UserController {
      */
     private final Logger logger = LoggerFactory.getLogger(UserController.class);
 
+    /**
+     * The most recipes that can be saved or removed in one request
+     */
+    private static final int MAX_BULK_RECIPES = 500;
+
+    /**
+     * The response header that carries the total number of items across all pages
+     */
+    public static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+
+    private static final int MAX_PAGE_SIZE = 200;
+
+    /**
+     * The SavedRecipe property behind each way saved recipes can be sorted
+     */
+    private static final Map<String, String> SAVED_RECIPE_SORTS = Map.of(
+            "savedAt", "savedAt",
+            "name", "recipe.name",
+            "prepTime", "recipe.prepTime");
+
     /**
      * For interfacing with the User table in the database
      */
@@ -67,22 +93,25 @@ public class UserController {
      */
     private final RecipeCalendarItemRepository calendarRepository;
 
+    /**
+     * For paging through the recipes users have saved
+     */
+    private final SavedRecipeRepository savedRecipeRepository;
 
     private final S3Service s3Service;
     /**
      * For parsing dates
      */
     private final SimpleDateFormat formatter = new SimpleDateFormat("yyyy-MM-dd", Locale.ENGLISH);
-    String[] restrictions = {"pescetarian", "lacto vegetarian", "ovo vegetarian", "vegan", "vegetarian",
-            "dairy", "egg", "gluten", "peanut", "sesame", "seafood",
-            "shellfish", "soy", "sulfite", "tree nut", "wheat"};
 
     public UserController(UserRepository userRepository, RecipeRepository recipeRepository,
-                          IngredientRepository ingredientRepository, RecipeCalendarItemRepository calendarRepository, S3Service s3Service) {
+                          IngredientRepository ingredientRepository, RecipeCalendarItemRepository calendarRepository,
+                          SavedRecipeRepository savedRecipeRepository, S3Service s3Service) {
         this.userRepository = userRepository;
         this.recipeRepository = recipeRepository;
         this.ingredientRepository = ingredientRepository;
         this.calendarRepository = calendarRepository;
+        this.savedRecipeRepository = savedRecipeRepository;
         this.s3Service = s3Service;
     }
 
@@ -122,7 +151,7 @@ public class UserController {
             user.setPassword(bCryptPasswordEncoder.encode(user.getPassword()));
             user = userRepository.save(user);
 
-            return ResponseEntity.ok().body(UserDTO.mapFromUser(user));
+            return ResponseEntity.ok().body(toDTO(user, false));
 
             /* if the posted data is missing values that are required
              * or if we have a unique constraint violation */
@@ -179,7 +208,7 @@ public class UserController {
 
             user = userRepository.save(user);
 
-            return ResponseEntity.ok().body(new UserDTO(user));
+            return ResponseEntity.ok().body(toDTO(user, false));
 
             /* if the posted data is missing values that are required
              * or if we have a unique constraint violation */
@@ -190,12 +219,15 @@ public class UserController {
     }
 
     /**
-     * @param id the id of the user to be fetched
+     * @param id                  the id of the user to be fetched
+     * @param includeSavedRecipes whether to embed every recipe the user has saved, rather than just how many there
+     *                            are and where to page through them
      * @return a DTO representing the requested user
      */
     @GetMapping("/{id}")
     @ApiOperation(value = "Fetch a user's information based on their ID")
-    public ResponseEntity<UserDTO> getUser(@PathVariable Long id) {
+    public ResponseEntity<UserDTO> getUser(@PathVariable Long id,
+                                           @RequestParam(name = "includeSavedRecipes", defaultValue = "false") boolean includeSavedRecipes) {
 
         User user = userRepository
                 .findById(id)
@@ -203,7 +235,24 @@ public class UserController {
                         new UserNotFoundException("Unable to find user " + id)
                 );
 
-        return ResponseEntity.ok().body(new UserDTO(user));
+        return ResponseEntity.ok().body(toDTO(user, includeSavedRecipes));
+    }
+
+    /**
+     * @param user                a user
+     * @param includeSavedRecipes whether to embed the user's saved recipes
+     * @return the DTO of the user, with the number of recipes they have saved and where to page through them
+     */
+    private UserDTO toDTO(User user, boolean includeSavedRecipes) {
+
+        UserDTO userDTO = UserDTO.mapFromUser(user);
+        userDTO.setSavedRecipeCount(savedRecipeRepository.countByUserId(user.getId()));
+        userDTO.setSavedRecipesLink("/api/users/" + user.getId() + "/recipes");
+
+        if (includeSavedRecipes)
+            userDTO.setSavedRecipes(user.getSavedRecipes());
+
+        return userDTO;
     }
 
     /**
@@ -222,7 +271,7 @@ public class UserController {
         });
 
         if (bCryptPasswordEncoder.matches(password, user.getPassword())) {
-            return ResponseEntity.ok().body(new UserDTO(user));
+            return ResponseEntity.ok().body(toDTO(user, false));
         } else {
             logger.error("Attempted login with username " + username + " failed due to incorrect password");
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(null);
@@ -296,18 +345,46 @@ public class UserController {
     }
 
     /**
-     * @param userId the id of the user who's saved recipes are being requested
-     * @return a list of recipes that the specified user saved
+     * @param userId    the id of the user who's saved recipes are being requested
+     * @param page      which page to return, starting at 0
+     * @param size      how many recipes to return (at most 200)
+     * @param sort      savedAt, name or prepTime
+     * @param direction asc or desc (by default the most recently saved come first, and names and preparation
+     *                  times are in ascending order)
+     * @return a page of the recipes that the specified user saved, with the total number saved in the
+     * X-Total-Count header
      */
     @GetMapping("/{userId}/recipes")
-    public ResponseEntity<List<Recipe>> getSavedRecipes(@PathVariable Long userId) {
+    @ApiOperation(value = "List a user's saved recipes a page at a time",
+            notes = "<b>Sort</b> is savedAt (the default), name or prepTime. The X-Total-Count header says how " +
+                    "many recipes the user has saved")
+    public ResponseEntity<List<Recipe>> getSavedRecipes(@PathVariable Long userId,
+                                                        @RequestParam(name = "page", defaultValue = "0") int page,
+                                                        @RequestParam(name = "size", defaultValue = "" + DEFAULT_PAGE_SIZE) int size,
+                                                        @RequestParam(name = "sort", defaultValue = "savedAt") String sort,
+                                                        @RequestParam(name = "direction", required = false) Sort.Direction direction) {
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() ->
-                        new UserNotFoundException(userId)
-                );
+        String property = SAVED_RECIPE_SORTS.get(sort);
+
+        if (property == null || page < 0)
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+
+        if (direction == null)
+            direction = sort.equals("savedAt") ? Sort.Direction.DESC : Sort.Direction.ASC;
+
+        /* the recipe ID breaks ties (e.g. recipes saved in the same instant) so that pages never overlap */
+        PageRequest pageRequest = PageRequest.of(page, Math.max(1, Math.min(size, MAX_PAGE_SIZE)),
+                Sort.by(direction, property).and(Sort.by("key.recipeId")));
+
+        Page<Long> ids = savedRecipeRepository.findRecipeIdsByUserId(userId, pageRequest);
 
-        return ResponseEntity.ok(new ArrayList<>(user.getSavedRecipes()));
+        /* only an empty page needs a second look to tell a user without saved recipes from one that doesn't exist */
+        if (ids.isEmpty() && !userRepository.existsById(userId))
+            throw new UserNotFoundException(userId);
+
+        return ResponseEntity.ok()
+                .header(TOTAL_COUNT_HEADER, String.valueOf(ids.getTotalElements()))
+                .body(recipeRepository.findAllInOrder(ids.getContent()));
     }
 
     /**
@@ -317,21 +394,42 @@ public class UserController {
      */
     @PostMapping("/{userId}/recipes/{recipeId}")
     public ResponseEntity<Void> saveRecipeToAccount(@PathVariable Long userId, @PathVariable Long recipeId) {
-        User user = userRepository.findById(userId)
-                .orElseThrow(() ->
-                        new UserNotFoundException(userId)
-                );
 
-        Recipe recipe = recipeRepository.findById(recipeId)
-                .orElseThrow(() ->
-                        new RecipeNotFoundException(recipeId)
-                );
+        if (!userRepository.existsById(userId))
+            throw new UserNotFoundException(userId);
+
+        if (!recipeRepository.existsById(recipeId))
+            throw new RecipeNotFoundException(recipeId);
+
+        userRepository.saveRecipes(userId, Collections.singletonList(recipeId));
 
-        Set<Recipe> recipes = user.getSavedRecipes();
-        recipes.add(recipe);
-        user.setSavedRecipes(recipes);
+        return ResponseEntity.ok().build();
+    }
+
+    /**
+     * @param userId    the id of the user who is saving the specified recipes
+     * @param recipeIds the ids of the recipes which the user is attempting to save (at most 500)
+     * @return an HTTP response that confirms if the recipes have been saved to the user's account; if any of the
+     * recipes doesn't exist, none of them are saved
+     */
+    @PostMapping("/{userId}/recipes")
+    @ApiOperation(value = "Save many recipes to a user's account at once",
+            notes = "The body is a JSON array of recipe IDs; recipes that are already saved are skipped")
+    public ResponseEntity<Void> saveRecipesToAccount(@PathVariable Long userId, @RequestBody List<Long> recipeIds) {
+
+        if (recipeIds.isEmpty() || recipeIds.size() > MAX_BULK_RECIPES)
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+
+        if (!userRepository.existsById(userId))
+            throw new UserNotFoundException(userId);
+
+        Set<Long> missing = new TreeSet<>(recipeIds);
+        missing.removeAll(recipeRepository.findExistingIds(recipeIds));
 
-        userRepository.save(user);
+        if (!missing.isEmpty())
+            throw new RecipeNotFoundException("no recipes with IDs " + missing);
+
+        userRepository.saveRecipes(userId, recipeIds);
 
         return ResponseEntity.ok().build();
     }
@@ -344,21 +442,35 @@ public class UserController {
     @DeleteMapping("/{userId}/recipes/{recipeId}")
     public ResponseEntity<Void> removeSavedRecipeFromAccount(@PathVariable Long userId, @PathVariable Long recipeId) {
 
-        User user = userRepository.findById(userId)
-                .orElseThrow(() ->
-                        new UserNotFoundException(userId)
-                );
+        if (!userRepository.existsById(userId))
+            throw new UserNotFoundException(userId);
 
-        Recipe recipe = recipeRepository.findById(recipeId)
-                .orElseThrow(() ->
-                        new RecipeNotFoundException(recipeId)
-                );
+        if (!recipeRepository.existsById(recipeId))
+            throw new RecipeNotFoundException(recipeId);
+
+        userRepository.removeSavedRecipes(userId, Collections.singletonList(recipeId));
+
+        return ResponseEntity.ok().build();
+    }
 
-        Set<Recipe> recipes = user.getSavedRecipes();
-        recipes.remove(recipe);
-        user.setSavedRecipes(recipes);
+    /**
+     * @param userId    the id of the user who is removing the specified recipes
+     * @param recipeIds the ids of the recipes which the user is attempting to remove from their account (at most
+     *                  500); ids that aren't saved are skipped
+     * @return an HTTP response that confirms if the recipes have been unsaved from the user's account
+     */
+    @DeleteMapping("/{userId}/recipes")
+    @ApiOperation(value = "Remove many saved recipes from a user's account at once")
+    public ResponseEntity<Void> removeSavedRecipesFromAccount(@PathVariable Long userId,
+                                                              @RequestParam("ids") List<Long> recipeIds) {
 
-        userRepository.save(user);
+        if (recipeIds.isEmpty() || recipeIds.size() > MAX_BULK_RECIPES)
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+
+        if (!userRepository.existsById(userId))
+            throw new UserNotFoundException(userId);
+
+        userRepository.removeSavedRecipes(userId, recipeIds);
 
         return ResponseEntity.ok().build();
     }
@@ -372,24 +484,15 @@ public class UserController {
     public ResponseEntity<Void> addDietaryRestrictionToAccount(@PathVariable Long userId,
                                                                @RequestParam String dietaryRestriction) {
 
-        if (Arrays.stream(restrictions).collect(Collectors.toList()).contains(dietaryRestriction)) {
+        Optional<RestrictionType> restriction = RestrictionType.fromLabel(dietaryRestriction);
 
-            User user = userRepository
-                    .findById(userId)
-                    .orElseThrow(() ->
-                            new UserNotFoundException(userId)
-                    );
+        if (restriction.isEmpty())
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
 
-            Set<String> dietaryRestrictions = user.getDietaryRestrictions();
-            dietaryRestrictions.add(dietaryRestriction);
-            user.setDietaryRestrictions(dietaryRestrictions);
+        if (userRepository.addDietaryRestrictions(userId, restriction.get().getBit()) == 0)
+            throw new UserNotFoundException(userId);
 
-            userRepository.save(user);
-
-            return ResponseEntity.ok().build();
-        }
-
-        return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        return ResponseEntity.ok().build();
     }
 
     /**
@@ -401,23 +504,14 @@ public class UserController {
     public ResponseEntity<Void> removeDietaryRestrictionFromAccount(@PathVariable Long userId,
                                                                     @RequestParam String dietaryRestriction) {
 
-        if (Arrays.stream(restrictions).collect(Collectors.toList()).contains(dietaryRestriction)) {
-
-            User user = userRepository
-                    .findById(userId)
-                    .orElseThrow(() ->
-                            new UserNotFoundException(userId)
-                    );
+        Optional<RestrictionType> restriction = RestrictionType.fromLabel(dietaryRestriction);
 
-            Set<String> dietaryRestrictions = user.getDietaryRestrictions();
-            dietaryRestrictions.remove(dietaryRestriction);
-            user.setDietaryRestrictions(dietaryRestrictions);
+        if (restriction.isEmpty())
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
 
-            userRepository.save(user);
+        if (userRepository.removeDietaryRestrictions(userId, restriction.get().getBit()) == 0)
+            throw new UserNotFoundException(userId);
 
-            return ResponseEntity.ok().build();
-        }
-
-        return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        return ResponseEntity.ok().build();
     }
 }
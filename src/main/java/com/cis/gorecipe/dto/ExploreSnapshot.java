@@ -0,0 +1,42 @@
+package com.cis.gorecipe.dto;
+
+import com.cis.gorecipe.model.Recipe;
+import lombok.Getter;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class holds a precomputed copy of the explore page, which is the same for every user
+ */
+@Getter
+public class ExploreSnapshot {
+
+    /**
+     * The recipes of each explore page category (e.g. vegan, dessert, quick)
+     */
+    private final Map<String, List<Recipe>> categories;
+
+    /**
+     * How long each category took to build, in milliseconds
+     */
+    private final Map<String, Long> timings;
+
+    /**
+     * When the snapshot was built
+     */
+    private final Instant builtAt;
+
+    /**
+     * @param categories the recipes of each explore page category
+     * @param timings    how long each category took to build, in milliseconds
+     * @param builtAt    when the snapshot was built
+     */
+    public ExploreSnapshot(Map<String, List<Recipe>> categories, Map<String, Long> timings, Instant builtAt) {
+        this.categories = Collections.unmodifiableMap(categories);
+        this.timings = Collections.unmodifiableMap(timings);
+        this.builtAt = builtAt;
+    }
+}
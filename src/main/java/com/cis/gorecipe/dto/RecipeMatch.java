@@ -0,0 +1,33 @@
+package com.cis.gorecipe.dto;
+
+import com.cis.gorecipe.model.Recipe;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * This class pairs a recipe with how well it is covered by the ingredients a user has on hand
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class RecipeMatch {
+
+    private Recipe recipe;
+
+    /**
+     * How many of the recipe's ingredients the user has
+     */
+    private int matchedIngredients;
+
+    /**
+     * How many of the recipe's ingredients the user would still need
+     */
+    private int missingIngredients;
+
+    public RecipeMatch(Recipe recipe, int matchedIngredients, int missingIngredients) {
+        this.recipe = recipe;
+        this.matchedIngredients = matchedIngredients;
+        this.missingIngredients = missingIngredients;
+    }
+}
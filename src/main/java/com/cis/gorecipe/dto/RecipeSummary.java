@@ -0,0 +1,41 @@
+package com.cis.gorecipe.dto;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * This class is a lightweight view of a Recipe for listings, without the instructions or ingredients
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class RecipeSummary {
+
+    /**
+     * The primary key of the recipe
+     */
+    private Long id;
+
+    /**
+     * The unique recipe name (e.g. French Onion Soup)
+     */
+    private String name;
+
+    /**
+     * How many minutes the recipe takes to prepare
+     */
+    private Integer prepTime;
+
+    /**
+     * An optional hyperlink to an image of the prepared recipe
+     */
+    private String imageURL;
+
+    public RecipeSummary(Long id, String name, Integer prepTime, String imageURL) {
+        this.id = id;
+        this.name = name;
+        this.prepTime = prepTime;
+        this.imageURL = imageURL;
+    }
+}
@@ -3,10 +3,12 @@ package com.cis.gorecipe.dto;
 import com.cis.gorecipe.model.Ingredient;
 import com.cis.gorecipe.model.Recipe;
 import com.cis.gorecipe.model.User;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
+import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -59,10 +61,22 @@ public class UserDTO {
     private Set<Ingredient> favoriteIngredients;
 
     /**
-     * A list of recipes which the user would like to revisit in the future
+     * A list of recipes which the user would like to revisit in the future, only present when asked for since it
+     * can be long (see {@link #savedRecipesLink})
      */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private Set<Recipe> savedRecipes;
 
+    /**
+     * How many recipes the user has saved
+     */
+    private long savedRecipeCount;
+
+    /**
+     * Where to page through the recipes the user has saved
+     */
+    private String savedRecipesLink;
+
     /**
      * A list of restrictions on which recipes the user can cook
      */
@@ -80,7 +94,6 @@ public class UserDTO {
         this.firstName = user.getFirstName();
         this.lastName = user.getLastName();
         this.dietaryRestrictions = user.getDietaryRestrictions();
-        this.savedRecipes = user.getSavedRecipes();
         this.favoriteIngredients = user.getFavoriteIngredients();
     }
 
@@ -107,6 +120,6 @@ public class UserDTO {
                 .setId(userDTO.getId())
                 .setFavoriteIngredients(userDTO.getFavoriteIngredients())
                 .setDietaryRestrictions(userDTO.getDietaryRestrictions())
-                .setSavedRecipes(userDTO.getSavedRecipes());
+                .setSavedRecipes(userDTO.getSavedRecipes() == null ? new HashSet<>() : userDTO.getSavedRecipes());
     }
 }
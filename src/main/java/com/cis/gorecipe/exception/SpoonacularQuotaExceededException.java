@@ -0,0 +1,13 @@
+package com.cis.gorecipe.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.TOO_MANY_REQUESTS)
+public class SpoonacularQuotaExceededException extends RuntimeException {
+
+    public SpoonacularQuotaExceededException(String error) {
+
+        super("Spoonacular API quota exceeded: " + error);
+    }
+}
@@ -0,0 +1,13 @@
+package com.cis.gorecipe.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class SpoonacularUnavailableException extends RuntimeException {
+
+    public SpoonacularUnavailableException(String error) {
+
+        super("Spoonacular API unavailable: " + error);
+    }
+}
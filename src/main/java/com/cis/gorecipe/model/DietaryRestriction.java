@@ -4,6 +4,10 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 import java.util.List;
@@ -12,6 +16,8 @@ import java.util.List;
  * This class allows GoRecipe to store various dietary restrictions, such as allergies, intolerances, religious restrictions and more
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "dietaryRestriction")
 @RequiredArgsConstructor
 @Getter
 @Setter
@@ -22,7 +28,9 @@ public class DietaryRestriction {
      * The primary key of the dietary restriction
      */
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "dietary_restriction_seq")
+    @GenericGenerator(name = "dietary_restriction_seq", strategy = "com.cis.gorecipe.util.PooledSequenceGenerator",
+            parameters = @Parameter(name = "sequence_name", value = "dietary_restriction_seq"))
     private Long id;
 
     /**
@@ -35,5 +43,6 @@ public class DietaryRestriction {
      * A list of ingredients which cannot be used by any user who has this dietary restriction
      */
     @ManyToMany
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "dietaryRestriction.disallowedIngredients")
     private List<Ingredient> disallowedIngredients;
 }
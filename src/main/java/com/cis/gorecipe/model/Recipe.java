@@ -5,8 +5,15 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import javax.persistence.*;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -15,14 +22,28 @@ import java.util.Objects;
  * This class allows GoRecipe to store the recipes that will power the core feature of the application
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "idx_recipe_updated_at", columnList = "updatedAt, id"),
+        @Index(name = "idx_recipe_compatibility", columnList = "compatibility, id")})
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "recipe")
+@NamedEntityGraph(name = Recipe.WITH_VERBOSE_INGREDIENTS, attributeNodes = @NamedAttributeNode("verboseIngredients"))
 @RequiredArgsConstructor
 @Getter
 @Setter
 @Accessors(chain = true)
 public class Recipe {
 
+    /**
+     * The fetch plan for anything that serializes recipes: the verbose ingredients are read in the same query
+     * rather than one query per recipe (the ingredients themselves are never serialized, so they stay lazy)
+     */
+    public static final String WITH_VERBOSE_INGREDIENTS = "Recipe.withVerboseIngredients";
+
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "recipe_seq")
+    @GenericGenerator(name = "recipe_seq", strategy = "com.cis.gorecipe.util.PooledSequenceGenerator",
+            parameters = @Parameter(name = "sequence_name", value = "recipe_seq"))
     private Long id;
 
     /**
@@ -52,7 +73,9 @@ public class Recipe {
      * The list of ingredients to be used in the recipe
      */
     @JsonIgnore
-    @ManyToMany(fetch = FetchType.EAGER)
+    @ManyToMany(fetch = FetchType.LAZY)
+    @BatchSize(size = 50)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "recipe.ingredients")
 //    @JoinTable(
 //            name = "recipe_ingredients",
 //            joinColumns = @JoinColumn(name = "recipe_id"),
@@ -63,6 +86,8 @@ public class Recipe {
      * This collection stores the ingredient names and quantities
      */
     @ElementCollection
+    @BatchSize(size = 50)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "recipe.verboseIngredients")
     private List<String> verboseIngredients = new ArrayList<>();
 
     /**
@@ -80,6 +105,31 @@ public class Recipe {
      */
     private String sourceURL;
 
+    /**
+     * A comma separated list of the cuisines the recipe belongs to (e.g. italian, mediterranean)
+     */
+    private String cuisines;
+
+    /**
+     * A comma separated list of the diets the recipe fits (e.g. gluten free, vegan)
+     */
+    private String diets;
+
+    /**
+     * When the recipe was last written, so that exports can pick up only what changed since the last run
+     */
+    @UpdateTimestamp
+    private Instant updatedAt;
+
+    /**
+     * The dietary restrictions the recipe is compatible with, one bit per {@link RestrictionType}, or null until it
+     * has been classified. Derived from the ingredients and diets, so it is neither serialized nor accepted. The
+     * (compatibility, id) index is for the startup backfill, which pages through the unclassified recipes in ID
+     * order; filtering by a mask can't use it
+     */
+    @JsonIgnore
+    private Integer compatibility;
+
     /**
      * @param ingredient an ingredient to be added to the recipe's ingredient list
      * @return the recipe object
@@ -89,6 +139,36 @@ public class Recipe {
         return this;
     }
 
+    /**
+     * @param restrictions a mask of {@link RestrictionType} bits (e.g. a user's restrictions)
+     * @return whether the recipe is known to be compatible with every one of the restrictions
+     */
+    public boolean isCompatibleWith(int restrictions) {
+        return restrictions == 0 || compatibility != null && (compatibility & restrictions) == restrictions;
+    }
+
+    /**
+     * @return a new recipe with the same content, so that one search result can be handed out more than once
+     * without callers writing onto each other's copies. A recipe read from the database keeps its ID and
+     * classification, so that it isn't classified and stored again
+     */
+    public Recipe copy() {
+        return new Recipe()
+                .setId(id)
+                .setCompatibility(compatibility)
+                .setPrepTime(prepTime)
+                .setSpoonacularId(spoonacularId)
+                .setName(name)
+                .setInstructions(instructions)
+                .setIngredients(ingredients == null ? null : new ArrayList<>(ingredients))
+                .setVerboseIngredients(verboseIngredients == null ? null : new ArrayList<>(verboseIngredients))
+                .setImageURL(imageURL)
+                .setVideoURL(videoURL)
+                .setSourceURL(sourceURL)
+                .setCuisines(cuisines)
+                .setDiets(diets);
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -114,6 +194,10 @@ public class Recipe {
             return false;
         if (!Objects.equals(videoURL, recipe.videoURL))
             return false;
+        if (!Objects.equals(cuisines, recipe.cuisines))
+            return false;
+        if (!Objects.equals(diets, recipe.diets))
+            return false;
         return Objects.equals(sourceURL, recipe.sourceURL);
     }
 
@@ -129,6 +213,8 @@ public class Recipe {
         result = 31 * result + (imageURL != null ? imageURL.hashCode() : 0);
         result = 31 * result + (videoURL != null ? videoURL.hashCode() : 0);
         result = 31 * result + (sourceURL != null ? sourceURL.hashCode() : 0);
+        result = 31 * result + (cuisines != null ? cuisines.hashCode() : 0);
+        result = 31 * result + (diets != null ? diets.hashCode() : 0);
         return result;
     }
 }
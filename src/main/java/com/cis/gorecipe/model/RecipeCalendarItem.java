@@ -4,6 +4,8 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
 
@@ -23,7 +25,9 @@ public class RecipeCalendarItem {
      * The primary key of the item
      */
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "recipe_calendar_item_seq")
+    @GenericGenerator(name = "recipe_calendar_item_seq", strategy = "com.cis.gorecipe.util.PooledSequenceGenerator",
+            parameters = @Parameter(name = "sequence_name", value = "recipe_calendar_item_seq"))
     private Long id;
 
     /**
@@ -0,0 +1,109 @@
+package com.cis.gorecipe.model;
+
+import java.util.*;
+
+/**
+ * The dietary restrictions a user can have. Each one owns a bit, so that a set of restrictions fits in a 16-bit
+ * mask and checking a recipe against a user's restrictions is a single AND. New restrictions must only ever be
+ * added at the end, since the bits are stored
+ */
+public enum RestrictionType {
+
+    PESCETARIAN("pescetarian", "pescetarian", "pescatarian", "lacto ovo vegetarian", "vegetarian", "vegan"),
+    LACTO_VEGETARIAN("lacto vegetarian", "lacto vegetarian", "vegan"),
+    OVO_VEGETARIAN("ovo vegetarian", "ovo vegetarian", "vegan"),
+    VEGAN("vegan", "vegan"),
+    VEGETARIAN("vegetarian", "vegetarian", "lacto ovo vegetarian", "vegan"),
+    DAIRY("dairy", "dairy free", "vegan"),
+    EGG("egg", "vegan"),
+    GLUTEN("gluten", "gluten free"),
+    PEANUT("peanut"),
+    SESAME("sesame"),
+    SEAFOOD("seafood"),
+    SHELLFISH("shellfish"),
+    SOY("soy"),
+    SULFITE("sulfite"),
+    TREE_NUT("tree nut"),
+    WHEAT("wheat", "gluten free");
+
+    /**
+     * The mask with every restriction's bit set
+     */
+    public static final int ALL = (1 << values().length) - 1;
+
+    private static final Map<String, RestrictionType> BY_LABEL = new HashMap<>();
+
+    static {
+        for (RestrictionType type : values())
+            BY_LABEL.put(type.label, type);
+    }
+
+    /**
+     * The name the API uses for the restriction (e.g. tree nut), which is also what Spoonacular calls it
+     */
+    private final String label;
+
+    /**
+     * The Spoonacular diets that a recipe can only fit if it is compatible with this restriction
+     */
+    private final Set<String> impliedByDiets;
+
+    RestrictionType(String label, String... impliedByDiets) {
+        this.label = label;
+        this.impliedByDiets = Set.of(impliedByDiets);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the restriction's bit
+     */
+    public int getBit() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * @param diets the diets a recipe fits, as Spoonacular names them (e.g. gluten free)
+     * @return whether fitting one of the diets makes a recipe compatible with this restriction
+     */
+    public boolean isImpliedBy(Collection<String> diets) {
+        for (String diet : diets)
+            if (impliedByDiets.contains(diet))
+                return true;
+
+        return false;
+    }
+
+    /**
+     * @return whether any diet makes a recipe compatible with this restriction
+     */
+    public boolean isImpliedByAnyDiet() {
+        return !impliedByDiets.isEmpty();
+    }
+
+    /**
+     * @param label the name of a restriction (case insensitive, e.g. Tree Nut)
+     * @return the restriction, if there is one by that name
+     */
+    public static Optional<RestrictionType> fromLabel(String label) {
+        return label == null
+                ? Optional.empty()
+                : Optional.ofNullable(BY_LABEL.get(label.trim().toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * @param labels the names of some restrictions (unknown names are ignored)
+     * @return the mask with the bit of every named restriction set
+     */
+    public static int maskOf(Collection<String> labels) {
+
+        int mask = 0;
+        if (labels != null)
+            for (String label : labels)
+                mask |= fromLabel(label).map(RestrictionType::getBit).orElse(0);
+
+        return mask;
+    }
+}
@@ -0,0 +1,69 @@
+package com.cis.gorecipe.model;
+
+import lombok.Getter;
+import org.hibernate.annotations.Immutable;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * This class is a read-only view of a row of the join table behind {@link User#getSavedRecipes()}, which also
+ * records when the recipe was saved, so that a user's saved recipes can be paged and sorted by save time. Rows are
+ * written through the user's collection or directly by UserRepository, and the database fills in the save time
+ */
+@Entity
+@Immutable
+@Table(name = User.SAVED_RECIPES_TABLE,
+        indexes = @Index(name = "idx_saved_recipe_saved_at", columnList = "user_id, saved_at"))
+@Getter
+public class SavedRecipe {
+
+    /**
+     * The primary key of a saved recipe row: the user and the recipe
+     */
+    @Embeddable
+    @Getter
+    public static class Key implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Column(name = "user_id")
+        private Long userId;
+
+        @Column(name = "saved_recipes_id")
+        private Long recipeId;
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+            return Objects.equals(userId, key.userId) && Objects.equals(recipeId, key.recipeId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(userId, recipeId);
+        }
+    }
+
+    @EmbeddedId
+    private Key key;
+
+    /**
+     * The recipe that was saved (only joined when sorting by its name or preparation time)
+     */
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "saved_recipes_id", insertable = false, updatable = false)
+    private Recipe recipe;
+
+    /**
+     * When the recipe was saved
+     */
+    @Column(name = "saved_at", insertable = false, updatable = false,
+            columnDefinition = "datetime(6) not null default current_timestamp(6)")
+    private Instant savedAt;
+}
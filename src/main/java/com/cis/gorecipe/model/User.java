@@ -1,14 +1,15 @@
 package com.cis.gorecipe.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
 import lombok.experimental.Accessors;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
 
 import javax.persistence.*;
-import java.util.HashSet;
-import java.util.Objects;
-import java.util.Set;
+import java.util.*;
 
 import static javax.persistence.TemporalType.DATE;
 
@@ -22,11 +23,18 @@ import static javax.persistence.TemporalType.DATE;
 @Accessors(chain = true)
 public class User {
 
+    /**
+     * The join table behind savedRecipes, which {@link SavedRecipe} also maps
+     */
+    public static final String SAVED_RECIPES_TABLE = "user_saved_recipes";
+
     /**
      * The primary key of the user
      */
     @Id
-    @GeneratedValue
+    @GeneratedValue(generator = "user_seq")
+    @GenericGenerator(name = "user_seq", strategy = "com.cis.gorecipe.util.PooledSequenceGenerator",
+            parameters = @Parameter(name = "sequence_name", value = "user_seq"))
     private Long id;
 
     /**
@@ -82,15 +90,56 @@ public class User {
      * A list of recipes which the user would like to revisit in the future
      */
     @ManyToMany(fetch = FetchType.LAZY)
+    @JoinTable(name = SAVED_RECIPES_TABLE,
+            joinColumns = @JoinColumn(name = "user_id"),
+            inverseJoinColumns = @JoinColumn(name = "saved_recipes_id"))
     @Column(nullable = false)
     private Set<Recipe> savedRecipes = new HashSet<>();
 
     /**
-     * A list of restrictions on which recipes the user can cook
+     * The restrictions on which recipes the user can cook, one bit per {@link RestrictionType}, so that they are
+     * read with the user's row and can be changed with a single UPDATE
      */
-    @Column(nullable = false)
-    @ElementCollection
-    private Set<String> dietaryRestrictions = new HashSet<>();
+    @JsonIgnore
+    @Column(name = "dietary_restrictions", nullable = false)
+    private int restrictionMask;
+
+    /**
+     * @return the restrictions on which recipes the user can cook
+     */
+    @JsonIgnore
+    public Set<RestrictionType> getRestrictions() {
+
+        Set<RestrictionType> restrictions = EnumSet.noneOf(RestrictionType.class);
+        for (RestrictionType type : RestrictionType.values())
+            if ((restrictionMask & type.getBit()) != 0)
+                restrictions.add(type);
+
+        return restrictions;
+    }
+
+    /**
+     * @return the names of the restrictions on which recipes the user can cook (a copy, so changing it doesn't
+     * change the user)
+     */
+    public Set<String> getDietaryRestrictions() {
+
+        Set<String> labels = new LinkedHashSet<>();
+        for (RestrictionType type : getRestrictions())
+            labels.add(type.getLabel());
+
+        return labels;
+    }
+
+    /**
+     * @param dietaryRestrictions the names of the restrictions on which recipes the user can cook (names that
+     *                            aren't a {@link RestrictionType} are ignored)
+     * @return the user object
+     */
+    public User setDietaryRestrictions(Set<String> dietaryRestrictions) {
+        this.restrictionMask = RestrictionType.maskOf(dietaryRestrictions);
+        return this;
+    }
 
     @Override
     public String toString() {
@@ -104,7 +153,7 @@ public class User {
                 ", birthDate=" + birthDate +
                 ", favoriteIngredients=" + favoriteIngredients +
                 ", savedRecipes=" + savedRecipes +
-                ", dietaryRestrictions=" + dietaryRestrictions +
+                ", dietaryRestrictions=" + getDietaryRestrictions() +
                 '}';
     }
 
@@ -131,6 +180,6 @@ public class User {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, username, password, email, firstName, lastName, birthDate, favoriteIngredients, savedRecipes, dietaryRestrictions);
+        return Objects.hash(id, username, password, email, firstName, lastName, birthDate, favoriteIngredients, savedRecipes, restrictionMask);
     }
 }
@@ -0,0 +1,59 @@
+package com.cis.gorecipe.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Moves existing databases from the shared hibernate_sequence onto the per-entity sequence tables: on startup,
+ * each sequence is advanced past the highest ID already in its table so that no generated ID can collide with a
+ * row that was inserted under the old scheme
+ */
+@Component
+public class IdSequenceMigration {
+
+    private final Logger logger = LoggerFactory.getLogger(IdSequenceMigration.class);
+
+    /**
+     * Each entity table and the sequence table its IDs come from
+     */
+    private static final Map<String, String> SEQUENCES = new LinkedHashMap<>();
+
+    static {
+        SEQUENCES.put("recipe", "recipe_seq");
+        SEQUENCES.put("user", "user_seq");
+        SEQUENCES.put("recipe_calendar_item", "recipe_calendar_item_seq");
+        SEQUENCES.put("dietary_restriction", "dietary_restriction_seq");
+    }
+
+    private final JdbcTemplate jdbc;
+
+    /**
+     * @param entityManagerFactory not used, but depending on it means the schema exists before we migrate
+     */
+    public IdSequenceMigration(JdbcTemplate jdbc, EntityManagerFactory entityManagerFactory) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    public void migrate() {
+
+        SEQUENCES.forEach((table, sequence) -> {
+
+            Long next = jdbc.queryForObject("select coalesce(max(id), 0) + 1 from " + table, Long.class);
+            Integer rows = jdbc.queryForObject("select count(*) from " + sequence, Integer.class);
+
+            if (rows == null || rows == 0) {
+                jdbc.update("insert into " + sequence + " (next_val) values (?)", next);
+            } else if (jdbc.update("update " + sequence + " set next_val = ? where next_val < ?", next, next) > 0) {
+                logger.info("Advanced " + sequence + " to " + next + " past the existing " + table + " IDs");
+            }
+        });
+    }
+}
@@ -3,13 +3,27 @@ package com.cis.gorecipe.repository;
 import com.cis.gorecipe.model.RecipeCalendarItem;
 import com.cis.gorecipe.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 
+import javax.persistence.QueryHint;
 import java.util.List;
 
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
+
 /**
  * This interface provides a way to use JPA to interface with the GoRecipe database to manage RecipeCalendarItems
  */
 public interface RecipeCalendarItemRepository extends JpaRepository<RecipeCalendarItem, Long> {
 
-    List<RecipeCalendarItem> getRecipeCalendarItemByUser(User user);
+    /**
+     * @param user the user whose calendar we want
+     * @return the items on the user's calendar, with their recipes (and the recipes' verbose ingredients) loaded
+     * in the same query
+     */
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct c from RecipeCalendarItem c join fetch c.user join fetch c.recipe r " +
+            "left join fetch r.verboseIngredients where c.user = :user")
+    List<RecipeCalendarItem> getRecipeCalendarItemByUser(@Param("user") User user);
 }
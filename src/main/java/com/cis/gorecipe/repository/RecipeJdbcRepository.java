@@ -0,0 +1,314 @@
+package com.cis.gorecipe.repository;
+
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import org.hibernate.SessionFactory;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManagerFactory;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * This class writes batches of recipes (with their ingredients) straight through JDBC, so that storing a page of
+ * search results takes a constant number of round trips however many recipes it contains
+ */
+@Repository
+public class RecipeJdbcRepository {
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    /**
+     * Runs the inserts of a batch in one transaction
+     */
+    private final TransactionTemplate transactions;
+
+    /**
+     * Reserves IDs in a transaction of its own (like Hibernate's table generator does), so the sequence row is
+     * only locked for as long as it takes to bump it
+     */
+    private final TransactionTemplate idTransactions;
+
+    /**
+     * For evicting cached query results that these writes (which Hibernate doesn't see) may have made stale
+     */
+    private final SessionFactory sessionFactory;
+
+    public RecipeJdbcRepository(NamedParameterJdbcTemplate jdbc, PlatformTransactionManager transactionManager,
+                                EntityManagerFactory entityManagerFactory) {
+        this.jdbc = jdbc;
+        this.sessionFactory = entityManagerFactory.unwrap(SessionFactory.class);
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.idTransactions = new TransactionTemplate(transactionManager);
+        this.idTransactions.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * The ID, Spoonacular ID and name of a stored recipe
+     */
+    private static class StoredRecipe {
+
+        private final long id;
+
+        private final Long spoonacularId;
+
+        private final String name;
+
+        private StoredRecipe(long id, Long spoonacularId, String name) {
+            this.id = id;
+            this.spoonacularId = spoonacularId;
+            this.name = name;
+        }
+    }
+
+    /**
+     * Store the recipes that aren't stored yet, along with their ingredients, and set the stored ID on every recipe.
+     * Recipes are matched to stored ones by Spoonacular ID (or by name if they don't have one), so calling this
+     * again with the same recipes changes nothing
+     *
+     * @param recipes the recipes to store (any ID they carry is ignored and replaced)
+     */
+    public void upsertAll(List<Recipe> recipes) {
+
+        if (recipes.isEmpty())
+            return;
+
+        upsertIngredients(recipes);
+
+        Map<Recipe, StoredRecipe> stored = findStored(recipes);
+
+        /* insert in a fixed order so that concurrent batches take their row locks in the same order */
+        List<Recipe> missing = recipes.stream()
+                .filter(r -> !stored.containsKey(r))
+                .sorted(Comparator.comparing(Recipe::getSpoonacularId, Comparator.nullsLast(Comparator.naturalOrder()))
+                        .thenComparing(Recipe::getName, Comparator.nullsLast(Comparator.naturalOrder())))
+                .collect(Collectors.toList());
+
+        if (!missing.isEmpty()) {
+            long firstId = reserveIds(missing.size());
+
+            Map<Recipe, Long> reserved = new IdentityHashMap<>();
+            for (Recipe r : missing)
+                reserved.put(r, firstId + reserved.size());
+
+            transactions.executeWithoutResult(status -> {
+
+                /* a concurrent batch may insert the same recipe first, in which case ours is a no-op */
+                jdbc.batchUpdate("insert into recipe " +
+                                "(id, name, spoonacular_id, prep_time, instructions, imageurl, videourl, sourceurl, " +
+                                "cuisines, diets, compatibility, updated_at) " +
+                                "values (:id, :name, :spoonacularId, :prepTime, :instructions, :imageURL, :videoURL, " +
+                                ":sourceURL, :cuisines, :diets, :compatibility, :updatedAt) " +
+                                "on duplicate key update id = id",
+                        missing.stream()
+                                .map(r -> recipeParameters(r, reserved.get(r)))
+                                .toArray(SqlParameterSource[]::new));
+
+                /* only the rows that actually went in with one of our IDs need their join rows written */
+                Map<Recipe, StoredRecipe> afterInsert = findStored(missing);
+                stored.putAll(afterInsert);
+
+                List<Recipe> inserted = missing.stream()
+                        .filter(r -> afterInsert.containsKey(r) && afterInsert.get(r).id == reserved.get(r))
+                        .collect(Collectors.toList());
+
+                insertJoinRows(inserted, afterInsert);
+            });
+
+            /* existing rows are never changed, so cached recipes are still correct, but a cached query (e.g. a
+             * lookup that found nothing) may now be missing the new ones */
+            sessionFactory.getCache().evictDefaultQueryRegion();
+        }
+
+        for (Recipe r : recipes)
+            r.setId(stored.containsKey(r) ? stored.get(r).id : null);
+    }
+
+    /**
+     * Store the dietary restriction compatibility of stored recipes, with one batch, and evict the recipes from the
+     * second-level cache (the column isn't part of the recipe's data, so updated_at is left alone)
+     *
+     * @param compatibilities the new compatibility mask of each recipe, by recipe ID
+     */
+    public void updateCompatibility(Map<Long, Integer> compatibilities) {
+
+        if (compatibilities.isEmpty())
+            return;
+
+        transactions.executeWithoutResult(status -> jdbc.batchUpdate(
+                "update recipe set compatibility = :compatibility where id = :id",
+                compatibilities.entrySet().stream()
+                        .map(e -> new MapSqlParameterSource()
+                                .addValue("id", e.getKey())
+                                .addValue("compatibility", e.getValue()))
+                        .toArray(SqlParameterSource[]::new)));
+
+        for (Long id : compatibilities.keySet())
+            sessionFactory.getCache().evictEntityData(Recipe.class, id);
+    }
+
+    /**
+     * Insert every ingredient of the recipes that isn't stored yet, with one query and one batch
+     */
+    private void upsertIngredients(List<Recipe> recipes) {
+
+        Set<String> names = recipes.stream()
+                .flatMap(r -> r.getIngredients().stream())
+                .map(Ingredient::getName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toCollection(TreeSet::new));
+
+        if (names.isEmpty())
+            return;
+
+        Set<String> existing = jdbc.queryForList("select name from ingredient where name in (:names)",
+                        Collections.singletonMap("names", names), String.class)
+                .stream()
+                .map(n -> n.toLowerCase(Locale.ROOT))
+                .collect(Collectors.toSet());
+
+        SqlParameterSource[] missing = names.stream()
+                .filter(n -> !existing.contains(n.toLowerCase(Locale.ROOT)))
+                .map(n -> new MapSqlParameterSource("name", n))
+                .toArray(SqlParameterSource[]::new);
+
+        if (missing.length > 0)
+            jdbc.batchUpdate("insert into ingredient (name) values (:name) on duplicate key update name = name", missing);
+    }
+
+    /**
+     * @param recipes some recipes
+     * @return the stored rows that the recipes match, with one query (Spoonacular ID first, then name, since names
+     * are unique too)
+     */
+    private Map<Recipe, StoredRecipe> findStored(List<Recipe> recipes) {
+
+        Set<Long> spoonacularIds = recipes.stream()
+                .map(Recipe::getSpoonacularId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        Set<String> names = recipes.stream()
+                .map(Recipe::getName)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+
+        List<String> conditions = new ArrayList<>();
+        if (!spoonacularIds.isEmpty())
+            conditions.add("spoonacular_id in (:spoonacularIds)");
+        if (!names.isEmpty())
+            conditions.add("name in (:names)");
+
+        if (conditions.isEmpty())
+            return new HashMap<>();
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("spoonacularIds", spoonacularIds)
+                .addValue("names", names);
+
+        List<StoredRecipe> rows = jdbc.query("select id, spoonacular_id, name from recipe where "
+                        + String.join(" or ", conditions), parameters,
+                (rs, rowNum) -> new StoredRecipe(rs.getLong("id"),
+                        rs.getObject("spoonacular_id") == null ? null : rs.getLong("spoonacular_id"),
+                        rs.getString("name")));
+
+        Map<Long, StoredRecipe> bySpoonacularId = new HashMap<>();
+        Map<String, StoredRecipe> byName = new HashMap<>();
+        for (StoredRecipe row : rows) {
+            if (row.spoonacularId != null)
+                bySpoonacularId.put(row.spoonacularId, row);
+            byName.put(row.name.toLowerCase(Locale.ROOT), row);
+        }
+
+        /* identity keys, since the recipes aren't stored yet their equals/hashCode would change with their IDs */
+        Map<Recipe, StoredRecipe> stored = new IdentityHashMap<>();
+        for (Recipe r : recipes) {
+            StoredRecipe row = r.getSpoonacularId() != null ? bySpoonacularId.get(r.getSpoonacularId()) : null;
+
+            if (row == null && r.getName() != null)
+                row = byName.get(r.getName().toLowerCase(Locale.ROOT));
+
+            if (row != null)
+                stored.put(r, row);
+        }
+
+        return stored;
+    }
+
+    /**
+     * @param count how many IDs are needed
+     * @return the first of a block of count consecutive IDs, claimed from the recipe sequence the same way
+     * Hibernate's pooled-lo optimizer claims its blocks
+     */
+    private long reserveIds(int count) {
+
+        Long first = idTransactions.execute(status -> {
+            Long next = jdbc.getJdbcTemplate()
+                    .queryForObject("select next_val from recipe_seq for update", Long.class);
+
+            jdbc.getJdbcTemplate().update("update recipe_seq set next_val = ?", next + count);
+            return next;
+        });
+
+        return Objects.requireNonNull(first);
+    }
+
+    /**
+     * Write the ingredient and verbose ingredient rows of newly inserted recipes, with one batch each
+     */
+    private void insertJoinRows(List<Recipe> recipes, Map<Recipe, StoredRecipe> stored) {
+
+        List<SqlParameterSource> ingredients = new ArrayList<>();
+        List<SqlParameterSource> verboseIngredients = new ArrayList<>();
+
+        for (Recipe r : recipes) {
+            long id = stored.get(r).id;
+
+            r.getIngredients().stream()
+                    .map(Ingredient::getName)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .forEach(name -> ingredients.add(new MapSqlParameterSource()
+                            .addValue("recipeId", id)
+                            .addValue("name", name)));
+
+            if (r.getVerboseIngredients() != null)
+                r.getVerboseIngredients().forEach(text -> verboseIngredients.add(new MapSqlParameterSource()
+                        .addValue("recipeId", id)
+                        .addValue("text", text)));
+        }
+
+        if (!ingredients.isEmpty())
+            jdbc.batchUpdate("insert into recipe_ingredients (recipe_id, ingredients_name) values (:recipeId, :name)",
+                    ingredients.toArray(new SqlParameterSource[0]));
+
+        if (!verboseIngredients.isEmpty())
+            jdbc.batchUpdate("insert into recipe_verbose_ingredients (recipe_id, verbose_ingredients) " +
+                            "values (:recipeId, :text)",
+                    verboseIngredients.toArray(new SqlParameterSource[0]));
+    }
+
+    private static SqlParameterSource recipeParameters(Recipe r, long id) {
+        return new MapSqlParameterSource()
+                .addValue("id", id)
+                .addValue("name", r.getName())
+                .addValue("spoonacularId", r.getSpoonacularId())
+                .addValue("prepTime", r.getPrepTime())
+                .addValue("instructions", r.getInstructions())
+                .addValue("imageURL", r.getImageURL())
+                .addValue("videoURL", r.getVideoURL())
+                .addValue("sourceURL", r.getSourceURL())
+                .addValue("cuisines", r.getCuisines())
+                .addValue("diets", r.getDiets())
+                .addValue("compatibility", r.getCompatibility())
+                .addValue("updatedAt", Timestamp.from(Instant.now()));
+    }
+}
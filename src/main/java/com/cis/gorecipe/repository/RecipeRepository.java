@@ -1,9 +1,32 @@
 package com.cis.gorecipe.repository;
 
+import com.cis.gorecipe.dto.RecipeSummary;
 import com.cis.gorecipe.model.Recipe;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_CACHEABLE;
+import static org.hibernate.jpa.QueryHints.HINT_CACHE_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_PASS_DISTINCT_THROUGH;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  * This interface provides a way to use JPA to interface with the GoRecipe database to manage Recipes
@@ -14,7 +37,183 @@ public interface RecipeRepository extends JpaRepository<Recipe, Long> {
 
     Recipe findRecipeBySpoonacularId(Long spoonacularId);
 
+    /**
+     * Load recipes that are about to leave the session (e.g. on a Spoonacular thread, where no session is open),
+     * so that copying or serializing them never needs a lazy load
+     *
+     * @param spoonacularIds the Spoonacular IDs of some recipes
+     * @return the stored recipes with those Spoonacular IDs, with their ingredients and verbose ingredients loaded
+     */
+    @Transactional(readOnly = true)
+    default List<Recipe> findAllBySpoonacularIdIn(Collection<Long> spoonacularIds) {
+
+        List<Recipe> recipes = findDistinctBySpoonacularIdIn(spoonacularIds);
+
+        /* two lists can't be fetch joined by one query, so a second one fills in the ingredients of the recipes
+         * the first one put in the session */
+        if (!recipes.isEmpty())
+            fetchIngredients(recipes.stream().map(Recipe::getId).collect(Collectors.toList()));
+
+        return recipes;
+    }
+
+    /**
+     * @param spoonacularIds the Spoonacular IDs of some recipes
+     * @return the stored recipes with those Spoonacular IDs, with their verbose ingredients loaded
+     */
+    @EntityGraph(Recipe.WITH_VERBOSE_INGREDIENTS)
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Recipe> findDistinctBySpoonacularIdIn(Collection<Long> spoonacularIds);
+
+    /**
+     * @param ids the IDs of some recipes
+     * @return the recipes, with their ingredients loaded
+     */
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    @Query("select distinct r from Recipe r left join fetch r.ingredients where r.id in :ids")
+    List<Recipe> fetchIngredients(@Param("ids") Collection<Long> ids);
+
     boolean existsByName(String name);
 
     List<Recipe> findAllByNameIn(Iterable<String> names);
+
+    @Query("select min(r.id) from Recipe r")
+    Long findMinId();
+
+    @Query("select max(r.id) from Recipe r")
+    Long findMaxId();
+
+    /**
+     * @param ids the IDs of some recipes
+     * @return the IDs among them that belong to a stored recipe
+     */
+    @Query("select r.id from Recipe r where r.id in :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * @param maxPrepTime the most minutes a recipe may take to prepare
+     * @param fromId      the smallest ID to return
+     * @param pageable    how many IDs to return
+     * @return the IDs of the quick recipes from the given ID onwards, in ID order. This walks the primary key from
+     * fromId and filters on preparation time as it goes, stopping once the page is full; quick recipes are common
+     * enough that few rows are read, whereas an index on preparation time couldn't return them in ID order
+     */
+    @Query("select r.id from Recipe r where r.prepTime <= :maxPrepTime and r.id >= :fromId order by r.id")
+    List<Long> findQuickIdsFrom(@Param("maxPrepTime") Integer maxPrepTime, @Param("fromId") Long fromId,
+                                Pageable pageable);
+
+    /**
+     * @param id the ID of a recipe
+     * @return the recipe, with everything the API serializes loaded in one query (or from the second-level cache)
+     */
+    @EntityGraph(Recipe.WITH_VERBOSE_INGREDIENTS)
+    @QueryHints(@QueryHint(name = HINT_CACHEABLE, value = "true"))
+    Optional<Recipe> findWithVerboseIngredientsById(Long id);
+
+    /**
+     * @param ids the IDs of the recipes to load
+     * @return the recipes (in no particular order), with everything the API serializes loaded in one query
+     */
+    @EntityGraph(Recipe.WITH_VERBOSE_INGREDIENTS)
+    @QueryHints(@QueryHint(name = HINT_PASS_DISTINCT_THROUGH, value = "false"))
+    List<Recipe> findDistinctByIdIn(Collection<Long> ids);
+
+    /**
+     * Load a page of recipes found by one of the ID queries below. Paging a fetch join would make Hibernate page
+     * in memory, so list endpoints page over IDs and then load just that page in one query.
+     *
+     * @param ids the IDs of the recipes to load, in the order they should be returned
+     * @return the recipes in the same order, with everything the API serializes loaded
+     */
+    default List<Recipe> findAllInOrder(List<Long> ids) {
+
+        if (ids.isEmpty())
+            return new ArrayList<>();
+
+        Map<Long, Recipe> byId = findDistinctByIdIn(ids).stream()
+                .collect(Collectors.toMap(Recipe::getId, Function.identity()));
+
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @param term     a search term
+     * @param pageable how many recipes to return
+     * @return the IDs of the recipes whose name or any ingredient contains the term
+     */
+    @Query("select distinct r.id from Recipe r left join r.ingredients i " +
+            "where lower(r.name) like lower(concat('%', :term, '%')) " +
+            "or lower(i.name) like lower(concat('%', :term, '%'))")
+    List<Long> searchIdsByNameOrIngredient(@Param("term") String term, Pageable pageable);
+
+    /**
+     * @param userId       the ID of a user
+     * @param restrictions a mask of the dietary restrictions the recipes must be compatible with (0 for none)
+     * @param pageable     how many recipes to return
+     * @return the IDs of the recipes the user hasn't saved, ordered by how many ingredients they share with the
+     * user's saved recipes
+     */
+    @Query("select r.id from Recipe r join r.ingredients i " +
+            "where i.name in (select si.name from User u join u.savedRecipes s join s.ingredients si where u.id = :userId) " +
+            "and r.id not in (select s.id from User u join u.savedRecipes s where u.id = :userId) " +
+            "and bitand(coalesce(r.compatibility, 0), :restrictions) = :restrictions " +
+            "group by r.id order by count(i) desc")
+    List<Long> findIdsBySharedIngredients(@Param("userId") Long userId, @Param("restrictions") int restrictions,
+                                          Pageable pageable);
+
+    /**
+     * @param restrictions a mask of the dietary restrictions the recipes must be compatible with (0 for none)
+     * @param pageable     how many IDs to return
+     * @return the IDs of the newest recipes, newest first
+     */
+    @Query("select r.id from Recipe r where bitand(coalesce(r.compatibility, 0), :restrictions) = :restrictions " +
+            "order by r.id desc")
+    List<Long> findNewestIds(@Param("restrictions") int restrictions, Pageable pageable);
+
+    /**
+     * @param afterId      the ID of the last recipe on the previous page (0 for the first page)
+     * @param restrictions a mask of the dietary restrictions the recipes must be compatible with (0 for none)
+     * @param pageable     how many recipes to return
+     * @return summaries of the recipes after the given ID, in ID order, reading only the summary columns
+     */
+    @Query("select new com.cis.gorecipe.dto.RecipeSummary(r.id, r.name, r.prepTime, r.imageURL) " +
+            "from Recipe r where r.id > :afterId and bitand(coalesce(r.compatibility, 0), :restrictions) = :restrictions order by r.id")
+    List<RecipeSummary> findSummariesAfter(@Param("afterId") Long afterId, @Param("restrictions") int restrictions,
+                                           Pageable pageable);
+
+    /**
+     * @param afterId      the ID of the last recipe on the previous page (0 for the first page)
+     * @param restrictions a mask of the dietary restrictions the recipes must be compatible with (0 for none)
+     * @param pageable     how many IDs to return
+     * @return the IDs of the recipes after the given ID, in ID order
+     */
+    @Query("select r.id from Recipe r where r.id > :afterId and bitand(coalesce(r.compatibility, 0), :restrictions) = :restrictions order by r.id")
+    List<Long> findIdsAfter(@Param("afterId") Long afterId, @Param("restrictions") int restrictions,
+                            Pageable pageable);
+
+    /**
+     * @return every recipe in ID order, read a fetch-size chunk at a time without passing through the second-level
+     * cache (must be consumed inside a transaction)
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false"),
+            @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE")})
+    @Query("select r from Recipe r order by r.id")
+    Stream<Recipe> streamAll();
+
+    /**
+     * @param since the earliest update to include
+     * @return the recipes written at or after the given time, oldest update first, read a fetch-size chunk at a
+     * time (must be consumed inside a transaction)
+     */
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true"),
+            @QueryHint(name = HINT_CACHEABLE, value = "false"),
+            @QueryHint(name = HINT_CACHE_MODE, value = "IGNORE")})
+    @Query("select r from Recipe r where r.updatedAt >= :since order by r.updatedAt, r.id")
+    Stream<Recipe> streamUpdatedSince(@Param("since") Instant since);
 }
@@ -0,0 +1,31 @@
+package com.cis.gorecipe.repository;
+
+import com.cis.gorecipe.model.SavedRecipe;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+/**
+ * This interface provides a way to use JPA to page through the recipes users have saved
+ */
+public interface SavedRecipeRepository extends JpaRepository<SavedRecipe, SavedRecipe.Key> {
+
+    /**
+     * @param userId   the ID of a user
+     * @param pageable the page to return, sorted by properties of SavedRecipe (e.g. savedAt or recipe.name)
+     * @return a page of the IDs of the user's saved recipes, with the total number saved (only counted when it
+     * can't be worked out from the page itself)
+     */
+    @Query(value = "select s.key.recipeId from SavedRecipe s where s.key.userId = :userId",
+            countQuery = "select count(s) from SavedRecipe s where s.key.userId = :userId")
+    Page<Long> findRecipeIdsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    /**
+     * @param userId the ID of a user
+     * @return how many recipes the user has saved
+     */
+    @Query("select count(s) from SavedRecipe s where s.key.userId = :userId")
+    long countByUserId(@Param("userId") Long userId);
+}
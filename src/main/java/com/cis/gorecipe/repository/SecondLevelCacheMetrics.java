@@ -0,0 +1,53 @@
+package com.cis.gorecipe.repository;
+
+import com.cis.gorecipe.util.MetricsSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * This class publishes the hit rates and sizes of Hibernate's second-level cache regions (see ehcache.xml)
+ */
+@Component
+public class SecondLevelCacheMetrics implements MetricsSource {
+
+    private final Statistics statistics;
+
+    public SecondLevelCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "secondLevelCache";
+    }
+
+    @Override
+    public Map<String, Number> getMetrics() {
+
+        Map<String, Number> metrics = new LinkedHashMap<>();
+
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            CacheRegionStatistics regionStatistics = statistics.getCacheRegionStatistics(region);
+
+            if (regionStatistics == null)
+                continue;
+
+            metrics.put(region + ".hits", regionStatistics.getHitCount());
+            metrics.put(region + ".misses", regionStatistics.getMissCount());
+            metrics.put(region + ".puts", regionStatistics.getPutCount());
+            metrics.put(region + ".size", regionStatistics.getElementCountInMemory());
+        }
+
+        metrics.put("queries.hits", statistics.getQueryCacheHitCount());
+        metrics.put("queries.misses", statistics.getQueryCacheMissCount());
+        metrics.put("queries.puts", statistics.getQueryCachePutCount());
+
+        return metrics;
+    }
+}
@@ -0,0 +1,21 @@
+package com.cis.gorecipe.repository;
+
+import org.hibernate.boot.MetadataBuilder;
+import org.hibernate.boot.spi.MetadataBuilderContributor;
+import org.hibernate.dialect.function.SQLFunctionTemplate;
+import org.hibernate.type.StandardBasicTypes;
+
+/**
+ * Registers the SQL functions that JPQL has no syntax for, so that repository queries can use them (enabled by
+ * hibernate.metadata_builder_contributor)
+ */
+public class SqlFunctions implements MetadataBuilderContributor {
+
+    @Override
+    public void contribute(MetadataBuilder metadataBuilder) {
+
+        /* bitand(a, b): the bitwise AND of two integers, e.g. for matching restriction masks */
+        metadataBuilder.applySqlFunction("bitand",
+                new SQLFunctionTemplate(StandardBasicTypes.INTEGER, "(?1 & ?2)"));
+    }
+}
@@ -2,9 +2,18 @@ package com.cis.gorecipe.repository;
 
 import com.cis.gorecipe.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.Optional;
 
+import static org.hibernate.jpa.QueryHints.HINT_NATIVE_SPACES;
+
 /**
  * This interface provides a way to use JPA to interface with the GoRecipe database to manage Users
  */
@@ -12,4 +21,71 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findByUsername(String username);
 
+    /**
+     * @param id the ID of a user
+     * @return the user's dietary restrictions as a mask of RestrictionType bits, without loading the user
+     */
+    @Query("select u.restrictionMask from User u where u.id = :id")
+    Optional<Integer> findRestrictionMaskById(@Param("id") Long id);
+
+    /**
+     * Atomically add dietary restrictions to a user, without loading the user. The native UPDATE declares the
+     * user table as the only one it touches, so Hibernate doesn't clear the whole second-level cache after it
+     *
+     * @param id   the ID of a user
+     * @param bits the RestrictionType bits to set
+     * @return how many users were updated (0 if there is no such user)
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "user"))
+    @Query(value = "update user set dietary_restrictions = dietary_restrictions | :bits where id = :id",
+            nativeQuery = true)
+    int addDietaryRestrictions(@Param("id") Long id, @Param("bits") int bits);
+
+    /**
+     * Atomically remove dietary restrictions from a user, without loading the user
+     *
+     * @param id   the ID of a user
+     * @param bits the RestrictionType bits to clear
+     * @return how many users were updated (0 if there is no such user)
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "user"))
+    @Query(value = "update user set dietary_restrictions = dietary_restrictions & ~:bits where id = :id",
+            nativeQuery = true)
+    int removeDietaryRestrictions(@Param("id") Long id, @Param("bits") int bits);
+
+    /**
+     * Save recipes to a user's account by writing the join rows directly, without loading the user, its saved
+     * recipes or the recipes. Recipes that are already saved (or don't exist) are skipped, so this is idempotent.
+     * Declaring the join table as the query space keeps the rest of the second-level cache, while still
+     * invalidating cached queries that read the join table
+     *
+     * @param userId    the ID of a user that exists
+     * @param recipeIds the IDs of the recipes to save
+     * @return how many recipes were newly saved
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "user_saved_recipes"))
+    @Query(value = "insert ignore into user_saved_recipes (user_id, saved_recipes_id) " +
+            "select :userId, id from recipe where id in (:recipeIds)", nativeQuery = true)
+    int saveRecipes(@Param("userId") Long userId, @Param("recipeIds") Collection<Long> recipeIds);
+
+    /**
+     * Remove recipes from a user's account by deleting the join rows directly (recipes that aren't saved are
+     * skipped, so this is idempotent)
+     *
+     * @param userId    the ID of a user
+     * @param recipeIds the IDs of the recipes to remove
+     * @return how many recipes were removed
+     */
+    @Modifying
+    @Transactional
+    @QueryHints(@QueryHint(name = HINT_NATIVE_SPACES, value = "user_saved_recipes"))
+    @Query(value = "delete from user_saved_recipes where user_id = :userId and saved_recipes_id in (:recipeIds)",
+            nativeQuery = true)
+    int removeSavedRecipes(@Param("userId") Long userId, @Param("recipeIds") Collection<Long> recipeIds);
 }
@@ -0,0 +1,16 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.dto.ExploreSnapshot;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface for ExploreServiceImpl
+ */
+public interface ExploreService {
+
+    Optional<ExploreSnapshot> getSnapshot();
+
+    CompletableFuture<ExploreSnapshot> refresh();
+}
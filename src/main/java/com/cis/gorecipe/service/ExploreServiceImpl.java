@@ -0,0 +1,303 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.dto.ExploreSnapshot;
+import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.repository.RecipeRepository;
+import com.cis.gorecipe.util.MetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This service builds the explore page in the background and swaps each new copy in atomically, so that
+ * requests for the page never wait on the Spoonacular API
+ */
+@Service
+public class ExploreServiceImpl implements ExploreService, MetricsSource {
+
+    private final Logger logger = LoggerFactory.getLogger(ExploreServiceImpl.class);
+
+    /**
+     * For interfacing with the Recipe table in the database
+     */
+    private final RecipeRepository recipeRepository;
+
+    /**
+     * Handles all interactions with the Spoonacular API
+     */
+    private final SpoonacularService spoonacularService;
+
+    /**
+     * Persists the recipes found for each category
+     */
+    private final RecipeIngestService recipeIngestService;
+
+    /**
+     * How long each category may take before the previous copy of it is kept instead
+     */
+    private final long categoryTimeoutMillis;
+
+    /**
+     * How many recipes are shown in the quick category
+     */
+    private static final int QUICK_RECIPES = 10;
+
+    /**
+     * The maximum prep time (in minutes) of a recipe in the quick category
+     */
+    private final int quickMaxPrepTime;
+
+    /**
+     * Picks where each quick recipe sample starts
+     */
+    private final Random random = new Random();
+
+    /**
+     * The explore page currently being served
+     */
+    private final AtomicReference<ExploreSnapshot> snapshot = new AtomicReference<>();
+
+    /**
+     * The refresh that is currently running, if any, so that concurrent triggers share it
+     */
+    private final AtomicReference<CompletableFuture<ExploreSnapshot>> inFlight = new AtomicReference<>();
+
+    private final AtomicLong refreshes = new AtomicLong();
+
+    private final AtomicLong staleCategories = new AtomicLong();
+
+    public ExploreServiceImpl(RecipeRepository recipeRepository, SpoonacularService spoonacularService,
+                              RecipeIngestService recipeIngestService,
+                              @Value("${explore.category-timeout-ms:5000}") long categoryTimeoutMillis,
+                              @Value("${explore.quick.max-prep-time:30}") int quickMaxPrepTime) {
+        this.recipeRepository = recipeRepository;
+        this.spoonacularService = spoonacularService;
+        this.recipeIngestService = recipeIngestService;
+        this.categoryTimeoutMillis = categoryTimeoutMillis;
+        this.quickMaxPrepTime = quickMaxPrepTime;
+    }
+
+    /**
+     * @return the current explore page, or nothing if no copy has been built yet, in which case one is built in
+     * the background (or the build that is already running is left to finish) rather than holding up the caller
+     */
+    @Override
+    public Optional<ExploreSnapshot> getSnapshot() {
+
+        ExploreSnapshot current = snapshot.get();
+
+        if (current == null)
+            refresh();
+
+        return Optional.ofNullable(current);
+    }
+
+    /**
+     * Rebuild the explore page on a fixed schedule
+     */
+    @Scheduled(fixedDelayString = "${explore.refresh-interval-ms:600000}",
+            initialDelayString = "${explore.refresh-initial-delay-ms:0}")
+    public void scheduledRefresh() {
+        try {
+            refresh().join();
+        } catch (Exception e) {
+            logger.warn("Scheduled explore page refresh failed: " + e);
+        }
+    }
+
+    /**
+     * Start rebuilding the explore page, or join the rebuild that is already running
+     *
+     * @return a future of the new snapshot, which has already been swapped in when the future completes
+     */
+    @Override
+    public CompletableFuture<ExploreSnapshot> refresh() {
+
+        CompletableFuture<ExploreSnapshot> pending = new CompletableFuture<>();
+        CompletableFuture<ExploreSnapshot> running = inFlight.compareAndExchange(null, pending);
+
+        if (running != null)
+            return running;
+
+        build().whenComplete((built, e) -> {
+
+            /* swap the snapshot in before letting the next refresh start, so that a request in between is
+             * served the new snapshot rather than starting a rebuild of its own */
+            if (e == null)
+                snapshot.set(built);
+
+            inFlight.set(null);
+
+            if (e == null) {
+                refreshes.incrementAndGet();
+                pending.complete(built);
+            } else {
+                logger.warn("Explore page refresh failed, continuing to serve the previous copy: " + e);
+                pending.completeExceptionally(e);
+            }
+        });
+
+        return pending;
+    }
+
+    /**
+     * @param key   the parameter that distinguishes the category (e.g. diet or type)
+     * @param value the value of that parameter (e.g. vegan or dessert)
+     * @return the search parameters for one of the explore page categories
+     */
+    private Map<String, String> exploreParameters(String key, String value) {
+
+        Map<String, String> searchParameters = new HashMap<>();
+
+        searchParameters.put("instructionsRequired", "True");
+        searchParameters.put("number", "10");
+        searchParameters.put(key, value);
+
+        return searchParameters;
+    }
+
+    /**
+     * Search for and save the recipes of one explore page category. A category that fails or takes longer than
+     * the category timeout keeps its recipes from the previous snapshot (or is empty if there is none).
+     *
+     * @param category   the name of the category (e.g. vegan)
+     * @param parameters the search parameters for the category
+     * @param previous   the snapshot currently being served, or null
+     * @param results    the map that the category's recipes are put into
+     * @param timings    the map that the time spent on the category (in milliseconds) is put into
+     * @return a future that completes once the category has been resolved
+     */
+    private CompletableFuture<Void> exploreCategory(String category, Map<String, String> parameters,
+                                                    ExploreSnapshot previous,
+                                                    Map<String, List<Recipe>> results, Map<String, Long> timings) {
+
+        long start = System.nanoTime();
+
+        CompletableFuture<List<Recipe>> pipeline;
+        try {
+            pipeline = spoonacularService.searchAsync(parameters).thenApply(recipeIngestService::saveRecipes);
+        } catch (RuntimeException e) {
+            pipeline = CompletableFuture.failedFuture(e);
+        }
+
+        return pipeline
+                .orTimeout(categoryTimeoutMillis, TimeUnit.MILLISECONDS)
+                .handle((recipes, e) -> {
+
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    timings.put(category, elapsed);
+
+                    if (e != null) {
+                        logger.warn("Explore category " + category + " failed after " + elapsed + " ms: " + e);
+                        staleCategories.incrementAndGet();
+                        recipes = previous == null ?
+                                new ArrayList<>() :
+                                previous.getCategories().getOrDefault(category, new ArrayList<>());
+                    }
+
+                    results.put(category, recipes);
+                    return null;
+                });
+    }
+
+    /**
+     * Sample quick recipes by starting a limited scan of the primary key at a random ID, so that each snapshot
+     * shows a different selection without reading the whole recipe table
+     *
+     * @return up to QUICK_RECIPES recipes that take at most quickMaxPrepTime minutes to prepare
+     */
+    private List<Recipe> quickRecipes() {
+
+        Long minId = recipeRepository.findMinId();
+        Long maxId = recipeRepository.findMaxId();
+
+        if (minId == null)
+            return new ArrayList<>();
+
+        long pivot = minId + (long) (random.nextDouble() * (maxId - minId + 1));
+
+        List<Long> ids = new ArrayList<>(recipeRepository.findQuickIdsFrom(quickMaxPrepTime, pivot,
+                PageRequest.of(0, QUICK_RECIPES)));
+
+        /* wrap around to the start of the table if there weren't enough recipes after the pivot */
+        if (ids.size() < QUICK_RECIPES && pivot > minId) {
+            recipeRepository.findQuickIdsFrom(quickMaxPrepTime, minId, PageRequest.of(0, QUICK_RECIPES))
+                    .stream()
+                    .filter(id -> id < pivot)
+                    .limit(QUICK_RECIPES - ids.size())
+                    .forEach(ids::add);
+        }
+
+        /* the snapshot is serialized long after this session has closed, so load everything it shows now */
+        return recipeRepository.findAllInOrder(ids);
+    }
+
+    /**
+     * @return a future of a freshly built explore page
+     */
+    private CompletableFuture<ExploreSnapshot> build() {
+
+        ExploreSnapshot previous = snapshot.get();
+
+        Map<String, Map<String, String>> categories = new LinkedHashMap<>();
+        categories.put("vegan", exploreParameters("diet", "vegan"));
+        categories.put("dinner", exploreParameters("type", "main course"));
+        categories.put("breakfast", exploreParameters("type", "breakfast"));
+        categories.put("dessert", exploreParameters("type", "dessert"));
+
+        Map<String, List<Recipe>> explore_info = new ConcurrentHashMap<>();
+        Map<String, Long> timings = new ConcurrentHashMap<>();
+
+        /* run the category searches concurrently rather than one after another */
+        CompletableFuture<?>[] pipelines = categories.entrySet()
+                .stream()
+                .map(c -> exploreCategory(c.getKey(), c.getValue(), previous, explore_info, timings))
+                .toArray(CompletableFuture[]::new);
+
+        return CompletableFuture.allOf(pipelines).thenApply(v -> {
+
+            explore_info.put("quick", quickRecipes());
+
+            logger.debug("Explore page category timings: " + timings);
+
+            return new ExploreSnapshot(new HashMap<>(explore_info), new LinkedHashMap<>(timings), Instant.now());
+        });
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "explore";
+    }
+
+    /**
+     * @return the age of the current snapshot, the time spent building each category, and refresh counters
+     */
+    @Override
+    public Map<String, Number> getMetrics() {
+
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        ExploreSnapshot current = snapshot.get();
+
+        metrics.put("refreshes", refreshes.get());
+        metrics.put("staleCategories", staleCategories.get());
+
+        if (current != null) {
+            metrics.put("snapshotAgeSeconds", Duration.between(current.getBuiltAt(), Instant.now()).getSeconds());
+            current.getTimings().forEach((category, millis) -> metrics.put("timing." + category, millis));
+        }
+
+        return metrics;
+    }
+}
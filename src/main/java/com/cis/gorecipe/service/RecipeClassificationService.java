@@ -0,0 +1,17 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.model.Recipe;
+
+import java.util.Collection;
+
+/**
+ * Interface for RecipeClassificationServiceImpl
+ */
+public interface RecipeClassificationService {
+
+    void classify(Collection<Recipe> recipes);
+
+    void reclassifyAll();
+
+    int knownRestrictions();
+}
@@ -0,0 +1,349 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.model.DietaryRestriction;
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.repository.DietaryRestrictionRepository;
+import com.cis.gorecipe.repository.RecipeJdbcRepository;
+import com.cis.gorecipe.util.MetricsSource;
+import com.cis.gorecipe.util.RestrictionRules;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.*;
+import org.hibernate.internal.SessionFactoryImpl;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This service works out which dietary restrictions each recipe is compatible with, from its ingredients, its
+ * diets and the disallowed ingredients of each {@link DietaryRestriction}, and stores the result as a mask on the
+ * recipe so that recipes can be filtered by a user's restrictions with a single AND. New recipes are classified
+ * as they are ingested, recipes that were stored before are classified by a backfill at startup, and every recipe
+ * is classified again in the background whenever a dietary restriction changes
+ */
+@Service
+public class RecipeClassificationServiceImpl implements RecipeClassificationService, MetricsSource {
+
+    private final Logger logger = LoggerFactory.getLogger(RecipeClassificationServiceImpl.class);
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    /**
+     * Stores the masks the backfill works out
+     */
+    private final RecipeJdbcRepository recipeJdbcRepository;
+
+    private final DietaryRestrictionRepository dietaryRestrictionRepository;
+
+    private final TransactionTemplate transactions;
+
+    private final EntityManagerFactory entityManagerFactory;
+
+    /**
+     * How many recipes are read and classified per round trip by the backfill
+     */
+    private final int batchSize;
+
+    /**
+     * The rules recipes are classified with, reloaded before every full run
+     */
+    private volatile RestrictionRules rules;
+
+    /**
+     * Runs the backfill and reclassifications one at a time
+     */
+    private final ExecutorService classifier = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "recipe-classifier");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Whether a full reclassification is waiting to start, so that a burst of changes only causes one
+     */
+    private final AtomicBoolean reclassifyQueued = new AtomicBoolean();
+
+    private final AtomicLong classified = new AtomicLong();
+
+    private final AtomicLong runs = new AtomicLong();
+
+    private volatile long lastRunMillis;
+
+    public RecipeClassificationServiceImpl(NamedParameterJdbcTemplate jdbc, RecipeJdbcRepository recipeJdbcRepository,
+                                           DietaryRestrictionRepository dietaryRestrictionRepository,
+                                           PlatformTransactionManager transactionManager,
+                                           EntityManagerFactory entityManagerFactory,
+                                           @Value("${recipes.classification.batch-size:1000}") int batchSize) {
+        this.jdbc = jdbc;
+        this.recipeJdbcRepository = recipeJdbcRepository;
+        this.dietaryRestrictionRepository = dietaryRestrictionRepository;
+        this.transactions = new TransactionTemplate(transactionManager);
+        this.entityManagerFactory = entityManagerFactory;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Reclassify every recipe once a transaction that changed a dietary restriction (or its disallowed
+     * ingredients) commits
+     */
+    @PostConstruct
+    public void listenForRestrictionChanges() {
+
+        RestrictionChangeListener listener = new RestrictionChangeListener(this);
+
+        EventListenerRegistry registry = entityManagerFactory.unwrap(SessionFactoryImpl.class)
+                .getServiceRegistry()
+                .getService(EventListenerRegistry.class);
+
+        registry.appendListeners(EventType.POST_INSERT, listener);
+        registry.appendListeners(EventType.POST_UPDATE, listener);
+        registry.appendListeners(EventType.POST_DELETE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_RECREATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_UPDATE, listener);
+        registry.appendListeners(EventType.POST_COLLECTION_REMOVE, listener);
+    }
+
+    /**
+     * Classify the recipes that were stored before they could be classified, without holding up startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        classifier.execute(() -> run(false));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        classifier.shutdownNow();
+    }
+
+    /**
+     * @param recipes recipes that are about to be stored; each gets its compatibility mask set
+     */
+    @Override
+    public void classify(Collection<Recipe> recipes) {
+
+        RestrictionRules current = rules();
+
+        for (Recipe recipe : recipes) {
+            List<String> ingredients = new ArrayList<>();
+            if (recipe.getIngredients() != null)
+                for (Ingredient ingredient : recipe.getIngredients())
+                    ingredients.add(ingredient.getName());
+
+            recipe.setCompatibility(current.classify(recipe.getDiets(), ingredients));
+        }
+    }
+
+    /**
+     * Classify every stored recipe again in the background, with freshly loaded rules
+     */
+    @Override
+    public void reclassifyAll() {
+        if (reclassifyQueued.compareAndSet(false, true))
+            classifier.execute(() -> {
+                reclassifyQueued.set(false);
+                run(true);
+            });
+    }
+
+    /**
+     * @return the mask of the restrictions recipes can currently be judged against; filtering by any other
+     * restriction would hide every recipe, so callers leave those bits out
+     */
+    @Override
+    public int knownRestrictions() {
+        return rules().getKnownMask();
+    }
+
+    /**
+     * Classify stored recipes a batch at a time, in ID order
+     *
+     * @param all whether to classify every recipe, rather than only the ones that were never classified
+     */
+    private void run(boolean all) {
+
+        long start = System.currentTimeMillis();
+
+        try {
+            RestrictionRules current = loadRules();
+            long after = 0;
+            List<Map<String, Object>> rows;
+
+            do {
+                rows = jdbc.queryForList("select id, diets from recipe where id > :after " +
+                                (all ? "" : "and compatibility is null ") + "order by id limit :limit",
+                        new MapSqlParameterSource("after", after).addValue("limit", batchSize));
+
+                if (rows.isEmpty())
+                    break;
+
+                List<Long> ids = new ArrayList<>();
+                for (Map<String, Object> row : rows)
+                    ids.add(((Number) row.get("id")).longValue());
+
+                Map<Long, List<String>> ingredients = new HashMap<>();
+                jdbc.query("select recipe_id, ingredients_name from recipe_ingredients where recipe_id in (:ids)",
+                        new MapSqlParameterSource("ids", ids),
+                        rs -> {
+                            ingredients.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getString(2));
+                        });
+
+                Map<Long, Integer> compatibilities = new HashMap<>();
+                for (Map<String, Object> row : rows) {
+                    long id = ((Number) row.get("id")).longValue();
+                    compatibilities.put(id, current.classify((String) row.get("diets"),
+                            ingredients.getOrDefault(id, Collections.emptyList())));
+                }
+
+                recipeJdbcRepository.updateCompatibility(compatibilities);
+                classified.addAndGet(compatibilities.size());
+
+                after = ids.get(ids.size() - 1);
+            } while (rows.size() == batchSize);
+
+            runs.incrementAndGet();
+            lastRunMillis = System.currentTimeMillis() - start;
+        } catch (Exception e) {
+            logger.error("Failed to classify recipes by dietary restriction: " + e);
+        }
+    }
+
+    private RestrictionRules rules() {
+        RestrictionRules current = rules;
+        return current != null ? current : loadRules();
+    }
+
+    /**
+     * @return the rules for the dietary restrictions currently in the database, which also become the rules new
+     * recipes are classified with
+     */
+    private RestrictionRules loadRules() {
+
+        Map<String, List<String>> disallowed = transactions.execute(status -> {
+            Map<String, List<String>> byName = new HashMap<>();
+
+            for (DietaryRestriction restriction : dietaryRestrictionRepository.findAll()) {
+                List<String> names = byName.computeIfAbsent(restriction.getName(), n -> new ArrayList<>());
+                if (restriction.getDisallowedIngredients() != null)
+                    for (Ingredient ingredient : restriction.getDisallowedIngredients())
+                        names.add(ingredient.getName());
+            }
+
+            return byName;
+        });
+
+        RestrictionRules loaded = new RestrictionRules(Objects.requireNonNull(disallowed));
+        rules = loaded;
+        return loaded;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "recipeClassification";
+    }
+
+    /**
+     * @return how many restrictions have ingredient data, how many recipes have been classified in the background,
+     * how many runs have finished and how long the last one took
+     */
+    @Override
+    public Map<String, Number> getMetrics() {
+
+        RestrictionRules current = rules;
+
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("restrictionsWithData", current == null ? 0 : current.size());
+        metrics.put("classified", classified.get());
+        metrics.put("runs", runs.get());
+        metrics.put("lastRunMillis", lastRunMillis);
+        return metrics;
+    }
+
+    /**
+     * Hears about every insert, update and delete Hibernate makes, and about every change to an entity's
+     * collections, and asks for a reclassification after the commit of any transaction that touched a dietary
+     * restriction
+     */
+    private static class RestrictionChangeListener implements PostInsertEventListener, PostUpdateEventListener,
+            PostDeleteEventListener, PostCollectionRecreateEventListener, PostCollectionUpdateEventListener,
+            PostCollectionRemoveEventListener {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient RecipeClassificationService service;
+
+        private RestrictionChangeListener(RecipeClassificationService service) {
+            this.service = service;
+        }
+
+        @Override
+        public void onPostInsert(PostInsertEvent event) {
+            changed(event.getEntity(), event.getSession());
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            changed(event.getEntity(), event.getSession());
+        }
+
+        @Override
+        public void onPostDelete(PostDeleteEvent event) {
+            changed(event.getEntity(), event.getSession());
+        }
+
+        @Override
+        public void onPostRecreateCollection(PostCollectionRecreateEvent event) {
+            changed(event.getAffectedOwnerOrNull(), event.getSession());
+        }
+
+        @Override
+        public void onPostUpdateCollection(PostCollectionUpdateEvent event) {
+            changed(event.getAffectedOwnerOrNull(), event.getSession());
+        }
+
+        @Override
+        public void onPostRemoveCollection(PostCollectionRemoveEvent event) {
+            changed(event.getAffectedOwnerOrNull(), event.getSession());
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return false;
+        }
+
+        /**
+         * Still abstract in Hibernate 5, so it has to be implemented; Hibernate itself calls the correctly
+         * spelled {@link #requiresPostCommitHandling}
+         */
+        @Override
+        @Deprecated
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return requiresPostCommitHandling(persister);
+        }
+
+        private void changed(Object entity, EventSource session) {
+            if (entity instanceof DietaryRestriction)
+                session.getActionQueue().registerProcess((success, s) -> {
+                    if (success)
+                        service.reclassifyAll();
+                });
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.cis.gorecipe.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+
+/**
+ * Interface for RecipeExportServiceImpl
+ */
+public interface RecipeExportService {
+
+    long exportRecipes(Instant updatedSince, OutputStream out) throws IOException;
+}
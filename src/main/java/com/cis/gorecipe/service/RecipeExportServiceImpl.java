@@ -0,0 +1,85 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.repository.RecipeRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * This service writes the recipe catalog out as newline-delimited JSON, one recipe per line, without ever holding
+ * more than a few hundred recipes in memory
+ */
+@Service
+public class RecipeExportServiceImpl implements RecipeExportService {
+
+    /**
+     * For interfacing with the Recipe table in the database
+     */
+    private final RecipeRepository recipeRepository;
+
+    /**
+     * Serializes recipes the same way the REST API does
+     */
+    private final ObjectMapper objectMapper;
+
+    /**
+     * How many recipes are written between clearing the persistence context (and flushing the output)
+     */
+    private final int clearEvery;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public RecipeExportServiceImpl(RecipeRepository recipeRepository, ObjectMapper objectMapper,
+                                   @Value("${recipes.export.clear-every:500}") int clearEvery) {
+        this.recipeRepository = recipeRepository;
+        this.objectMapper = objectMapper;
+        this.clearEvery = Math.max(1, clearEvery);
+    }
+
+    /**
+     * @param updatedSince only export recipes written at or after this time, or null to export every recipe
+     * @param out          where to write the recipes
+     * @return how many recipes were written
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public long exportRecipes(Instant updatedSince, OutputStream out) throws IOException {
+
+        OutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        long written = 0;
+
+        try (Stream<Recipe> recipes = updatedSince == null
+                ? recipeRepository.streamAll()
+                : recipeRepository.streamUpdatedSince(updatedSince)) {
+
+            Iterator<Recipe> it = recipes.iterator();
+
+            while (it.hasNext()) {
+                buffered.write(objectMapper.writeValueAsBytes(it.next()));
+                buffered.write('\n');
+
+                /* recipes that have been written are never needed again, so don't let them pile up in the
+                 * persistence context */
+                if (++written % clearEvery == 0) {
+                    entityManager.clear();
+                    buffered.flush();
+                }
+            }
+        }
+
+        buffered.flush();
+        return written;
+    }
+}
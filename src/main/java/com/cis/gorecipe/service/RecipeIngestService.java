@@ -0,0 +1,17 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.model.Recipe;
+
+import java.util.List;
+
+/**
+ * Interface for RecipeIngestServiceImpl
+ */
+public interface RecipeIngestService {
+
+    List<Recipe> saveRecipes(List<Recipe> recipes);
+
+    Recipe findProvisional(Long provisionalId);
+
+    void flush();
+}
@@ -0,0 +1,447 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.repository.RecipeJdbcRepository;
+import com.cis.gorecipe.util.ExpiringLruCache;
+import com.cis.gorecipe.util.MetricsSource;
+import com.cis.gorecipe.util.StripedLocks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * This service persists recipes (and their ingredients) that were found through the Spoonacular API. In
+ * write-behind mode, new recipes are handed back straight away with provisional (negative) IDs and persisted in
+ * batches by a background thread
+ */
+@Service
+public class RecipeIngestServiceImpl implements RecipeIngestService, MetricsSource {
+
+    private final Logger logger = LoggerFactory.getLogger(RecipeIngestServiceImpl.class);
+
+    /**
+     * Writes batches of recipes and their ingredients with a constant number of round trips
+     */
+    private final RecipeJdbcRepository recipeJdbcRepository;
+
+    /**
+     * Makes newly stored recipes searchable locally
+     */
+    private final RecipeSearchService recipeSearchService;
+
+    /**
+     * Works out which dietary restrictions new recipes are compatible with
+     */
+    private final RecipeClassificationService recipeClassificationService;
+
+    /**
+     * Serializes concurrent writes of the same recipes (by Spoonacular ID), while unrelated batches still run in
+     * parallel
+     */
+    private final StripedLocks recipeLocks;
+
+    /**
+     * How many times a batch is written again after losing a race (a deadlock or duplicate key) in the database
+     */
+    private static final int MAX_WRITE_ATTEMPTS = 3;
+
+    /**
+     * How many flushes a queued recipe may fail before it is given up on
+     */
+    private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+    private final AtomicLong writeConflicts = new AtomicLong();
+
+    /**
+     * Whether new recipes are persisted in the background rather than before saveRecipes returns
+     */
+    private final boolean writeBehind;
+
+    /**
+     * The most recipes that may wait to be persisted; once the queue is full, new recipes are persisted before
+     * saveRecipes returns, which holds searches back until the writer catches up
+     */
+    private final int queueCapacity;
+
+    /**
+     * The most recipes persisted in one batch
+     */
+    private final int batchSize;
+
+    /**
+     * The recipes waiting to be persisted by Spoonacular ID, oldest first, so that the same recipe found by
+     * several searches is only written once
+     */
+    private final LinkedHashMap<Long, Pending> queue = new LinkedHashMap<>();
+
+    /**
+     * Recent recipes by provisional ID, so they can be fetched before (and after) they are persisted
+     */
+    private final ExpiringLruCache<Long, Recipe> provisionalRecipes;
+
+    /**
+     * Hands out provisional IDs, which are negative so they can never clash with a stored recipe
+     */
+    private final AtomicLong nextProvisionalId = new AtomicLong();
+
+    private final ScheduledExecutorService writer;
+
+    private final AtomicLong enqueued = new AtomicLong();
+
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final AtomicLong writtenThrough = new AtomicLong();
+
+    private final AtomicLong retried = new AtomicLong();
+
+    private final AtomicLong persisted = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * How long the most recently persisted batch had waited in the queue, in milliseconds
+     */
+    private volatile long lastLagMillis;
+
+    /**
+     * A recipe waiting to be persisted
+     */
+    private static class Pending {
+
+        private final Recipe recipe;
+
+        /**
+         * The ID the recipe was handed out with
+         */
+        private final Long provisionalId;
+
+        /**
+         * Copies of the recipe that later searches handed out (with the same provisional ID) while it was queued,
+         * which get its real ID too once it is persisted. Only touched while holding the queue's lock
+         */
+        private final List<Recipe> coalesced = new ArrayList<>();
+
+        private final long enqueuedAt = System.currentTimeMillis();
+
+        /**
+         * How many flushes have failed to persist the recipe
+         */
+        private int attempts;
+
+        private Pending(Recipe recipe) {
+            this.recipe = recipe;
+            this.provisionalId = recipe.getId();
+        }
+    }
+
+    public RecipeIngestServiceImpl(RecipeJdbcRepository recipeJdbcRepository, RecipeSearchService recipeSearchService,
+                                   RecipeClassificationService recipeClassificationService,
+                                   @Value("${recipes.write-behind.enabled:false}") boolean writeBehind,
+                                   @Value("${recipes.write-behind.queue-capacity:1000}") int queueCapacity,
+                                   @Value("${recipes.write-behind.batch-size:50}") int batchSize,
+                                   @Value("${recipes.write-behind.flush-interval-ms:500}") long flushIntervalMillis,
+                                   @Value("${recipes.write-behind.provisional-ttl-seconds:3600}") long provisionalTtlSeconds,
+                                   @Value("${recipes.ingest.lock-stripes:64}") int lockStripes) {
+        this.recipeJdbcRepository = recipeJdbcRepository;
+        this.recipeSearchService = recipeSearchService;
+        this.recipeClassificationService = recipeClassificationService;
+        this.recipeLocks = new StripedLocks(lockStripes);
+        this.writeBehind = writeBehind;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.provisionalRecipes = new ExpiringLruCache<>(Math.max(1, queueCapacity * 10), provisionalTtlSeconds * 1000);
+
+        if (writeBehind) {
+            this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "recipe-write-behind");
+                t.setDaemon(true);
+                return t;
+            });
+            this.writer.scheduleWithFixedDelay(this::flushSafely, flushIntervalMillis, flushIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.writer = null;
+        }
+    }
+
+    /**
+     * Persist whatever is still queued when the application shuts down
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (writer != null) {
+            writer.shutdown();
+            flushSafely();
+        }
+    }
+
+    /**
+     * @param recipes a list of recipes, some of which may not be in the database yet
+     * @return the recipes with their stored IDs, or in write-behind mode with provisional IDs for the ones that
+     * are still waiting to be persisted
+     */
+    @Override
+    public List<Recipe> saveRecipes(List<Recipe> recipes) {
+
+        /* classified up front, so that provisional recipes can be filtered by dietary restrictions too */
+        recipeClassificationService.classify(recipes.stream()
+                .filter(r -> r.getId() == null || r.getId() < 0)
+                .collect(Collectors.toList()));
+
+        if (!writeBehind)
+            return persist(recipes);
+
+        /* recipes that weren't found through Spoonacular can't be coalesced, and recipes that don't fit in the
+         * queue must not be lost, so both are stored straight away */
+        List<Recipe> writeThrough = new ArrayList<>();
+
+        for (Recipe r : recipes) {
+
+            /* already stored */
+            if (r.getId() != null && r.getId() > 0)
+                continue;
+
+            if (r.getSpoonacularId() == null || !enqueue(r))
+                writeThrough.add(r);
+        }
+
+        if (!writeThrough.isEmpty())
+            persist(writeThrough);
+
+        return recipes;
+    }
+
+    /**
+     * @param recipe a new recipe found through the Spoonacular API
+     * @return whether the recipe is waiting to be persisted, or false if the queue is full and the caller must
+     * persist it
+     */
+    private boolean enqueue(Recipe recipe) {
+
+        synchronized (queue) {
+            Pending pending = queue.get(recipe.getSpoonacularId());
+
+            if (pending != null) {
+                coalesced.incrementAndGet();
+                recipe.setId(pending.recipe.getId());
+                pending.coalesced.add(recipe);
+
+                /* the provisional ID keeps pointing at the queued recipe, which is the one that gets persisted */
+                return true;
+            }
+
+            if (queue.size() >= queueCapacity) {
+                writtenThrough.incrementAndGet();
+                return false;
+            }
+
+            if (recipe.getId() == null)
+                recipe.setId(nextProvisionalId.decrementAndGet());
+
+            queue.put(recipe.getSpoonacularId(), new Pending(recipe));
+            enqueued.incrementAndGet();
+        }
+
+        provisionalRecipes.put(recipe.getId(), recipe);
+        return true;
+    }
+
+    /**
+     * @param provisionalId the provisional ID a recipe was handed out with
+     * @return the recipe, which carries its real ID once it has been persisted, or null if it is unknown
+     */
+    @Override
+    public Recipe findProvisional(Long provisionalId) {
+        return provisionalRecipes.get(provisionalId);
+    }
+
+    /**
+     * Persist everything that is currently queued, in batches. A batch that fails goes back in the queue and the
+     * flush stops there, so that the next one tries again rather than spinning while the database is down
+     */
+    @Override
+    public void flush() {
+
+        List<Pending> batch;
+
+        while (!(batch = nextBatch()).isEmpty()) {
+
+            List<Recipe> recipes = batch.stream().map(p -> p.recipe).collect(Collectors.toList());
+
+            /* the upsert is idempotent, so recipes someone else stored since they were queued are just matched */
+            try {
+                persist(recipes);
+                persisted.addAndGet(recipes.size());
+
+                /* the batch is out of the queue, so nothing is added to the copies any more */
+                for (Pending pending : batch)
+                    for (Recipe copy : pending.coalesced)
+                        copy.setId(pending.recipe.getId());
+            } catch (RuntimeException e) {
+                logger.warn("Failed to persist " + recipes.size() + " recipes: " + e.getMessage());
+                requeue(batch);
+                return;
+            }
+
+            lastLagMillis = System.currentTimeMillis() - batch.get(0).enqueuedAt;
+        }
+    }
+
+    /**
+     * Put a batch that failed to persist back in the queue, unless its recipes have failed too often
+     *
+     * @param batch recipes that were taken out of the queue
+     */
+    private void requeue(List<Pending> batch) {
+
+        synchronized (queue) {
+            for (Pending pending : batch) {
+                /* a failed write may have handed out an ID that was rolled back */
+                pending.recipe.setId(pending.provisionalId);
+
+                if (++pending.attempts >= MAX_FLUSH_ATTEMPTS) {
+                    failed.incrementAndGet();
+                    provisionalRecipes.invalidate(pending.recipe.getId());
+                    logger.error("Giving up on persisting recipe " + pending.recipe.getName() + " after " +
+                            pending.attempts + " attempts");
+                    continue;
+                }
+
+                retried.incrementAndGet();
+                Pending newer = queue.get(pending.recipe.getSpoonacularId());
+
+                /* the same recipe was found again while the batch was out of the queue, so the newer entry
+                 * carries this one's copies along */
+                if (newer != null) {
+                    newer.coalesced.add(pending.recipe);
+                    newer.coalesced.addAll(pending.coalesced);
+                } else {
+                    queue.put(pending.recipe.getSpoonacularId(), pending);
+                }
+            }
+        }
+    }
+
+    private void flushSafely() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.warn("Write-behind flush failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return up to batchSize of the oldest queued recipes, removed from the queue
+     */
+    private List<Pending> nextBatch() {
+
+        synchronized (queue) {
+            List<Pending> batch = new ArrayList<>();
+            Iterator<Pending> it = queue.values().iterator();
+
+            while (it.hasNext() && batch.size() < batchSize) {
+                batch.add(it.next());
+                it.remove();
+            }
+
+            return batch;
+        }
+    }
+
+    /**
+     * @param recipes a list of recipes, some of which may not be in the database yet
+     * @return the recipes with their stored IDs
+     */
+    private List<Recipe> persist(List<Recipe> recipes) {
+
+        /* recipes we read out of the database already have their real IDs, everything else is written in one
+         * set-based batch */
+        List<Recipe> unsaved = recipes.stream()
+                .filter(r -> r.getId() == null || r.getId() < 0)
+                .collect(Collectors.toList());
+
+        if (!unsaved.isEmpty()) {
+            upsertWithLocks(unsaved);
+            recipeSearchService.indexIfAbsent(unsaved);
+        }
+
+        return recipes.stream()
+                .filter(r -> r.getId() != null)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Write a batch while holding the locks of its recipes, so that this instance never races itself. Races with
+     * other instances are settled by the database: the upsert is idempotent and reads back the winning rows, and
+     * a batch that loses a deadlock or duplicate key race is simply written again
+     *
+     * @param recipes recipes that may not be in the database yet
+     */
+    private void upsertWithLocks(List<Recipe> recipes) {
+
+        List<Object> keys = recipes.stream()
+                .map(r -> r.getSpoonacularId() != null ? r.getSpoonacularId() : r.getName())
+                .collect(Collectors.toList());
+
+        for (int attempt = 1; ; attempt++) {
+            StripedLocks.Held held = recipeLocks.lockAll(keys);
+            try {
+                recipeJdbcRepository.upsertAll(recipes);
+                return;
+            } catch (ConcurrencyFailureException | DataIntegrityViolationException e) {
+                writeConflicts.incrementAndGet();
+
+                if (attempt >= MAX_WRITE_ATTEMPTS)
+                    throw e;
+
+                logger.info("Writing recipes again after a conflict: " + e.getMessage());
+            } finally {
+                held.close();
+            }
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "recipeIngest";
+    }
+
+    /**
+     * @return the depth of the write-behind queue, how long its oldest recipe has waited, how many recipes were
+     * queued, coalesced, written through because the queue was full, persisted, retried or given up on, and how
+     * often writes contended or conflicted
+     */
+    @Override
+    public Map<String, Number> getMetrics() {
+
+        Map<String, Number> metrics = new LinkedHashMap<>();
+
+        synchronized (queue) {
+            metrics.put("writeBehind.depth", queue.size());
+            metrics.put("writeBehind.oldestAgeMs", queue.isEmpty()
+                    ? 0 : System.currentTimeMillis() - queue.values().iterator().next().enqueuedAt);
+        }
+
+        metrics.put("writeBehind.lastLagMs", lastLagMillis);
+        metrics.put("writeBehind.enqueued", enqueued.get());
+        metrics.put("writeBehind.coalesced", coalesced.get());
+        metrics.put("writeBehind.writtenThrough", writtenThrough.get());
+        metrics.put("writeBehind.persisted", persisted.get());
+        metrics.put("writeBehind.retried", retried.get());
+        metrics.put("writeBehind.failed", failed.get());
+        metrics.put("locks.contended", recipeLocks.getContended());
+        metrics.put("writeConflicts", writeConflicts.get());
+        return metrics;
+    }
+}
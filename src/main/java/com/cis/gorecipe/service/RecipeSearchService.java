@@ -0,0 +1,29 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.util.IngredientIndex;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Interface for RecipeSearchServiceImpl
+ */
+public interface RecipeSearchService {
+
+    List<Long> search(String query, Integer maxPrepTime, Collection<String> cuisines, Collection<String> diets,
+                      int limit);
+
+    List<Long> search(String query, Integer maxPrepTime, Collection<String> cuisines, Collection<String> diets,
+                      int limit, double minTermCoverage);
+
+    List<IngredientIndex.Match> cookWith(Collection<String> ingredients, int maxMissing, int limit);
+
+    boolean isReady();
+
+    void index(Collection<Recipe> recipes);
+
+    void indexIfAbsent(Collection<Recipe> recipes);
+
+    void remove(Long recipeId);
+}
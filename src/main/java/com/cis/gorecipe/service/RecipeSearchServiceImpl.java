@@ -0,0 +1,281 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.util.IngredientIndex;
+import com.cis.gorecipe.util.InvertedIndex;
+import com.cis.gorecipe.util.MetricsSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * This service searches the recipes we have already stored with an in-memory inverted index (ranked by BM25 over
+ * recipe names, ingredient names and instructions), so that many searches can be answered without the Spoonacular
+ * API, and finds the recipes that can be cooked with a set of ingredients with an ingredient bitmap index. Both
+ * indexes are built from the database in the background at startup and kept up to date as recipes are stored and
+ * deleted
+ */
+@Service
+public class RecipeSearchServiceImpl implements RecipeSearchService, MetricsSource {
+
+    private final Logger logger = LoggerFactory.getLogger(RecipeSearchServiceImpl.class);
+
+    /**
+     * How many times a word in a recipe's name counts compared to a word in its instructions
+     */
+    private static final int NAME_WEIGHT = 3;
+
+    /**
+     * How many times an ingredient name counts compared to a word in the instructions
+     */
+    private static final int INGREDIENT_WEIGHT = 2;
+
+    private static final int INSTRUCTIONS_WEIGHT = 1;
+
+    private final NamedParameterJdbcTemplate jdbc;
+
+    private final InvertedIndex index = new InvertedIndex();
+
+    private final IngredientIndex ingredientIndex = new IngredientIndex();
+
+    /**
+     * How many recipes are read from the database per round trip while the index is built
+     */
+    private final int buildBatchSize;
+
+    /**
+     * Whether the index holds every stored recipe; until then searches shouldn't rely on it
+     */
+    private volatile boolean ready;
+
+    private volatile long buildMillis;
+
+    public RecipeSearchServiceImpl(NamedParameterJdbcTemplate jdbc,
+                                   @Value("${recipes.search.build-batch-size:1000}") int buildBatchSize) {
+        this.jdbc = jdbc;
+        this.buildBatchSize = Math.max(1, buildBatchSize);
+    }
+
+    /**
+     * Build the index once the application is up, without holding up startup
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildInBackground() {
+        Thread builder = new Thread(this::build, "recipe-index-build");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+    /**
+     * Read every stored recipe (a batch at a time, in ID order) into the index. Recipes indexed while the build
+     * runs are left as they are, and a recipe deleted while the build runs may linger in the index, which is
+     * harmless because search results are looked up in the database
+     */
+    private void build() {
+
+        long start = System.currentTimeMillis();
+
+        try {
+            long after = 0;
+            List<Map<String, Object>> rows;
+
+            do {
+                rows = jdbc.queryForList("select id, name, instructions, prep_time, cuisines, diets from recipe " +
+                                "where id > :after order by id limit :limit",
+                        new MapSqlParameterSource("after", after).addValue("limit", buildBatchSize));
+
+                if (rows.isEmpty())
+                    break;
+
+                List<Long> ids = new ArrayList<>();
+                for (Map<String, Object> row : rows)
+                    ids.add(((Number) row.get("id")).longValue());
+
+                Map<Long, List<String>> ingredients = new HashMap<>();
+                jdbc.query("select recipe_id, ingredients_name from recipe_ingredients where recipe_id in (:ids)",
+                        new MapSqlParameterSource("ids", ids),
+                        rs -> {
+                            ingredients.computeIfAbsent(rs.getLong(1), id -> new ArrayList<>()).add(rs.getString(2));
+                        });
+
+                for (Map<String, Object> row : rows) {
+                    long id = ((Number) row.get("id")).longValue();
+                    Number prepTime = (Number) row.get("prep_time");
+                    List<String> recipeIngredients = ingredients.getOrDefault(id, Collections.emptyList());
+
+                    index.putIfAbsent(document(id, (String) row.get("name"), (String) row.get("instructions"),
+                            prepTime == null ? null : prepTime.intValue(), (String) row.get("cuisines"),
+                            (String) row.get("diets"), recipeIngredients));
+                    ingredientIndex.putIfAbsent(id, recipeIngredients);
+                }
+
+                after = ids.get(ids.size() - 1);
+            } while (rows.size() == buildBatchSize);
+
+            buildMillis = System.currentTimeMillis() - start;
+            ready = true;
+
+            logger.info("Indexed " + index.size() + " recipes in " + buildMillis + " ms");
+        } catch (Exception e) {
+            logger.error("Failed to build the recipe search index, searches will not use it: " + e);
+        }
+    }
+
+    /**
+     * @param query       the free text query
+     * @param maxPrepTime if not null, only recipes that take at most this many minutes match
+     * @param cuisines    if not empty, only recipes of at least one of these cuisines match
+     * @param diets       if not empty, only recipes that fit every one of these diets match
+     * @param limit       the most IDs to return
+     * @return the IDs of the best matching recipes, best first
+     */
+    @Override
+    public List<Long> search(String query, Integer maxPrepTime, Collection<String> cuisines,
+                             Collection<String> diets, int limit) {
+        return search(query, maxPrepTime, cuisines, diets, limit, 0);
+    }
+
+    /**
+     * @param query           the free text query
+     * @param maxPrepTime     if not null, only recipes that take at most this many minutes match
+     * @param cuisines        if not empty, only recipes of at least one of these cuisines match
+     * @param diets           if not empty, only recipes that fit every one of these diets match
+     * @param limit           the most IDs to return
+     * @param minTermCoverage the share of the query's words a recipe must contain (0 for any, 1 for all)
+     * @return the IDs of the best matching recipes, best first
+     */
+    @Override
+    public List<Long> search(String query, Integer maxPrepTime, Collection<String> cuisines,
+                             Collection<String> diets, int limit, double minTermCoverage) {
+
+        List<Collection<String>> filters = new ArrayList<>();
+
+        if (cuisines != null && !cuisines.isEmpty()) {
+            List<String> anyCuisine = new ArrayList<>();
+            for (String cuisine : cuisines)
+                anyCuisine.add(InvertedIndex.tag("cuisine", cuisine));
+            filters.add(anyCuisine);
+        }
+
+        if (diets != null)
+            for (String diet : diets)
+                filters.add(Collections.singletonList(InvertedIndex.tag("diet", diet)));
+
+        return index.search(query, maxPrepTime, filters, limit, minTermCoverage);
+    }
+
+    /**
+     * @param ingredients the ingredients on hand
+     * @param maxMissing  the most ingredients a recipe may need beyond the ones on hand
+     * @param limit       the most recipes to return
+     * @return the recipes that use any of the ingredients and miss at most maxMissing of their own, fewest missing
+     * first
+     */
+    @Override
+    public List<IngredientIndex.Match> cookWith(Collection<String> ingredients, int maxMissing, int limit) {
+        return ingredientIndex.match(ingredients, maxMissing, limit);
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * @param recipes stored recipes to add to the index, replacing what was indexed for them before
+     */
+    @Override
+    public void index(Collection<Recipe> recipes) {
+        for (Recipe recipe : recipes)
+            if (recipe.getId() != null && recipe.getId() > 0) {
+                index.put(document(recipe));
+                ingredientIndex.put(recipe.getId(), ingredientNames(recipe));
+            }
+    }
+
+    /**
+     * @param recipes stored recipes to add to the index unless they are indexed already (recipes from the
+     *                Spoonacular API never change, so there is nothing to replace)
+     */
+    @Override
+    public void indexIfAbsent(Collection<Recipe> recipes) {
+        for (Recipe recipe : recipes)
+            if (recipe.getId() != null && recipe.getId() > 0 && !index.contains(recipe.getId())) {
+                index.putIfAbsent(document(recipe));
+                ingredientIndex.putIfAbsent(recipe.getId(), ingredientNames(recipe));
+            }
+    }
+
+    /**
+     * @param recipeId the ID of a recipe that has been deleted
+     */
+    @Override
+    public void remove(Long recipeId) {
+        index.remove(recipeId);
+        ingredientIndex.remove(recipeId);
+    }
+
+    private static List<String> ingredientNames(Recipe recipe) {
+
+        List<String> ingredients = new ArrayList<>();
+        if (recipe.getIngredients() != null)
+            for (Ingredient ingredient : recipe.getIngredients())
+                ingredients.add(ingredient.getName());
+
+        return ingredients;
+    }
+
+    private static InvertedIndex.Document document(Recipe recipe) {
+        return document(recipe.getId(), recipe.getName(), recipe.getInstructions(), recipe.getPrepTime(),
+                recipe.getCuisines(), recipe.getDiets(), ingredientNames(recipe));
+    }
+
+    private static InvertedIndex.Document document(long id, String name, String instructions, Integer prepTime,
+                                                   String cuisines, String diets, List<String> ingredients) {
+
+        InvertedIndex.Document document = new InvertedIndex.Document(id)
+                .text(name, NAME_WEIGHT)
+                .text(instructions, INSTRUCTIONS_WEIGHT)
+                .prepTime(prepTime);
+
+        for (String ingredient : ingredients)
+            document.text(ingredient, INGREDIENT_WEIGHT);
+
+        if (cuisines != null)
+            for (String cuisine : cuisines.split(","))
+                document.tag("cuisine", cuisine);
+
+        if (diets != null)
+            for (String diet : diets.split(","))
+                document.tag("diet", diet);
+
+        return document;
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "recipeSearch";
+    }
+
+    /**
+     * @return the size of the indexes, how many searches they have served, and how long they took to build
+     */
+    @Override
+    public Map<String, Number> getMetrics() {
+
+        Map<String, Number> metrics = new LinkedHashMap<>(index.getStats());
+        ingredientIndex.getStats().forEach((name, value) -> metrics.put("ingredients." + name, value));
+        metrics.put("ready", ready ? 1 : 0);
+        metrics.put("buildMillis", buildMillis);
+
+        return metrics;
+    }
+}
@@ -0,0 +1,233 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.exception.SpoonacularQuotaExceededException;
+import com.cis.gorecipe.util.MetricsSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A token bucket shared by all outbound Spoonacular requests. Requests are weighted by the RapidAPI points they
+ * cost, limited by both a per-second and a per-day budget, and wait a bounded amount of time for the per-second
+ * budget to refill before failing fast
+ */
+@Component
+public class SpoonacularRateLimiter implements MetricsSource {
+
+    /**
+     * How many points per second we may spend, which is also the most we can spend in a single burst
+     */
+    private final double pointsPerSecond;
+
+    /**
+     * How many points we may spend per (UTC) day, which is when RapidAPI resets the quota
+     */
+    private final double pointsPerDay;
+
+    /**
+     * The longest a request may wait for the per-second budget before it is rejected
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * The most requests that may be waiting at once before new requests are rejected
+     */
+    private final int maxQueued;
+
+    private final LongSupplier nanoClock;
+
+    private final Clock clock;
+
+    /**
+     * Completes delayed requests once their tokens have refilled
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "spoonacular-rate-limiter");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private double tokens;
+
+    private long lastRefill;
+
+    private LocalDate day;
+
+    private double pointsToday;
+
+    private int queued;
+
+    private long granted;
+
+    private long delayed;
+
+    private long rejected;
+
+    private long upstreamRejected;
+
+    @Autowired
+    public SpoonacularRateLimiter(@Value("${spoonacular.rate-limit.points-per-second:5}") double pointsPerSecond,
+                                  @Value("${spoonacular.rate-limit.points-per-day:5000}") double pointsPerDay,
+                                  @Value("${spoonacular.rate-limit.max-wait-ms:2000}") long maxWaitMillis,
+                                  @Value("${spoonacular.rate-limit.max-queued:50}") int maxQueued) {
+        this(pointsPerSecond, pointsPerDay, maxWaitMillis, maxQueued, System::nanoTime, Clock.systemUTC());
+    }
+
+    SpoonacularRateLimiter(double pointsPerSecond, double pointsPerDay, long maxWaitMillis, int maxQueued,
+                           LongSupplier nanoClock, Clock clock) {
+        this.pointsPerSecond = pointsPerSecond;
+        this.pointsPerDay = pointsPerDay;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        this.maxQueued = maxQueued;
+        this.nanoClock = nanoClock;
+        this.clock = clock;
+        this.tokens = pointsPerSecond;
+        this.lastRefill = nanoClock.getAsLong();
+        this.day = LocalDate.now(clock.withZone(ZoneOffset.UTC));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * @param results how many results the search asks for
+     * @return the points a complexSearch request costs
+     */
+    public static double complexSearchPoints(int results) {
+        return 1 + 0.01 * results;
+    }
+
+    /**
+     * @param ids how many recipes are requested
+     * @return the points an informationBulk request costs
+     */
+    public static double informationBulkPoints(int ids) {
+        return 1 + 0.5 * Math.max(0, ids - 1);
+    }
+
+    /**
+     * @return the points a similar recipes request costs
+     */
+    public static double similarPoints() {
+        return 1;
+    }
+
+    /**
+     * Reserve points for a request
+     *
+     * @param points the RapidAPI points the request costs
+     * @return a future that completes once the request may be sent, or fails with a
+     * SpoonacularQuotaExceededException if the budget cannot cover it within the maximum wait
+     */
+    public CompletableFuture<Void> acquire(double points) {
+
+        long waitNanos;
+
+        synchronized (this) {
+            refill();
+
+            if (pointsToday + points > pointsPerDay) {
+                rejected++;
+                return CompletableFuture.failedFuture(
+                        new SpoonacularQuotaExceededException("the daily budget of " + pointsPerDay + " points is spent"));
+            }
+
+            /* a request larger than a whole burst may go once the bucket is full, leaving it in debt */
+            double deficit = Math.min(points, pointsPerSecond) - tokens;
+            waitNanos = deficit <= 0 ? 0 : (long) Math.ceil(deficit / pointsPerSecond * 1e9);
+
+            if (waitNanos > 0 && (queued >= maxQueued || waitNanos > maxWaitNanos)) {
+                rejected++;
+                return CompletableFuture.failedFuture(
+                        new SpoonacularQuotaExceededException("too many requests are waiting for the per-second budget"));
+            }
+
+            tokens -= points;
+            pointsToday += points;
+
+            if (waitNanos == 0) {
+                granted++;
+                return CompletableFuture.completedFuture(null);
+            }
+
+            queued++;
+            delayed++;
+        }
+
+        CompletableFuture<Void> permit = new CompletableFuture<>();
+        scheduler.schedule(() -> {
+            synchronized (this) {
+                queued--;
+                granted++;
+            }
+            permit.complete(null);
+        }, waitNanos, TimeUnit.NANOSECONDS);
+
+        return permit;
+    }
+
+    /**
+     * Called when Spoonacular answers with 429 Too Many Requests, so that we back off for a full second instead of
+     * continuing to send requests that will be rejected
+     */
+    public synchronized void onRateLimited() {
+        refill();
+        upstreamRejected++;
+        tokens = Math.min(tokens, 0) - pointsPerSecond;
+    }
+
+    /**
+     * Add the tokens that have accumulated since the last refill, and reset the daily budget at midnight UTC
+     */
+    private void refill() {
+
+        long now = nanoClock.getAsLong();
+        tokens = Math.min(pointsPerSecond, tokens + (now - lastRefill) / 1e9 * pointsPerSecond);
+        lastRefill = now;
+
+        LocalDate today = LocalDate.now(clock.withZone(ZoneOffset.UTC));
+        if (!today.equals(day)) {
+            day = today;
+            pointsToday = 0;
+        }
+    }
+
+    @Override
+    public String getMetricsName() {
+        return "spoonacularRateLimiter";
+    }
+
+    /**
+     * @return the remaining per-second and per-day budgets and how many requests were let through, delayed or
+     * rejected
+     */
+    @Override
+    public synchronized Map<String, Number> getMetrics() {
+
+        refill();
+
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        metrics.put("secondRemaining", Math.max(0, tokens));
+        metrics.put("dayRemaining", pointsPerDay - pointsToday);
+        metrics.put("queued", queued);
+        metrics.put("granted", granted);
+        metrics.put("delayed", delayed);
+        metrics.put("rejected", rejected);
+        metrics.put("upstreamRejected", upstreamRejected);
+        return metrics;
+    }
+}
@@ -1,12 +1,11 @@
 package com.cis.gorecipe.service;
 
 import com.cis.gorecipe.model.Recipe;
-import com.google.gson.Gson;
 
-import java.net.http.HttpClient;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for SpoonacularServiceImpl
@@ -23,17 +22,13 @@ public interface SpoonacularService {
      */
     String APIHOST = "spoonacular-recipe-food-nutrition-v1.p.rapidapi.com";
 
-    /**
-     * An HttpClient for sending POST/GET requests to the Spoonacular API
-     */
-    HttpClient client = HttpClient.newHttpClient();
-
-    /**
-     * A Google JSON Parser object for parsing the results of the Spoonacular API
-     */
-    Gson parser = new Gson();
-
     List<Recipe> search(Map<String, String> searchParameters) throws Exception;
 
     List<Recipe> recommend(Set<Recipe> userRecipes) throws Exception;
+
+    CompletableFuture<List<Recipe>> searchAsync(Map<String, String> searchParameters);
+
+    CompletableFuture<List<Recipe>> recommendAsync(Set<Recipe> userRecipes);
+
+    void clearCache();
 }
@@ -1,87 +1,313 @@
 package com.cis.gorecipe.service;
 
-import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.exception.SpoonacularQuotaExceededException;
+import com.cis.gorecipe.exception.SpoonacularUnavailableException;
 import com.cis.gorecipe.model.Recipe;
 import com.cis.gorecipe.repository.RecipeRepository;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.cis.gorecipe.util.CircuitBreaker;
+import com.cis.gorecipe.util.ExpiringLruCache;
+import com.cis.gorecipe.util.HedgedRequests;
+import com.cis.gorecipe.util.MetricsSource;
+import com.cis.gorecipe.util.RetryPolicy;
+import com.cis.gorecipe.util.SingleFlight;
+import com.cis.gorecipe.util.SpoonacularJsonParser;
+import com.google.gson.stream.JsonReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStreamReader;
 import java.net.URI;
+import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
  * This class handles all interfacing with the Spoonacular Food and Recipe API
  */
 @Service
-public class SpoonacularServiceImpl implements SpoonacularService {
+public class SpoonacularServiceImpl implements SpoonacularService, MetricsSource {
 
     Logger logger = LoggerFactory.getLogger(SpoonacularServiceImpl.class);
 
     RecipeRepository recipeRepository;
 
-    public SpoonacularServiceImpl(RecipeRepository recipeRepository) {
+    /**
+     * Keeps outbound traffic within our RapidAPI point budgets
+     */
+    private final SpoonacularRateLimiter rateLimiter;
+
+    /**
+     * Stops sending requests for a while when the Spoonacular API is failing or slow, so callers can fall back
+     * to our own database instead of waiting on it
+     */
+    private final CircuitBreaker circuitBreaker;
+
+    /**
+     * Retries requests that failed with a transient error (5xx, 429, timeouts)
+     */
+    private final RetryPolicy retryPolicy;
+
+    /**
+     * Sends a second copy of requests that are taking unusually long, if enabled
+     */
+    private final HedgedRequests hedgedRequests;
+
+    /**
+     * Caches search results by their canonical parameters so that repeated queries don't use up our API quota
+     */
+    private final ExpiringLruCache<String, List<Recipe>> searchCache;
+
+    /**
+     * Shares a running search between concurrent callers with the same canonical parameters
+     */
+    private final SingleFlight<String, List<Recipe>> searchFlights = new SingleFlight<>();
+
+    /**
+     * Shares a running recommendation between concurrent callers with the same seed recipe
+     */
+    private final SingleFlight<Long, List<Recipe>> recommendFlights = new SingleFlight<>();
+
+    /**
+     * Shares running informationBulk lookups by Spoonacular ID, so overlapping pages only fetch each recipe once
+     */
+    private final SingleFlight<Long, Recipe> recipeFlights = new SingleFlight<>();
+
+    /**
+     * A bounded pool dedicated to processing Spoonacular responses so that servlet threads are released while
+     * we wait on the API
+     */
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * An HttpClient for sending GET requests to the Spoonacular API
+     */
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    /**
+     * How long to wait for the Spoonacular API to respond before giving up on a request
+     */
+    private final Duration requestTimeout;
+
+    public SpoonacularServiceImpl(RecipeRepository recipeRepository,
+                                  SpoonacularRateLimiter rateLimiter,
+                                  @Value("${spoonacular.cache.max-entries:500}") int cacheMaxEntries,
+                                  @Value("${spoonacular.cache.ttl-seconds:600}") long cacheTtlSeconds,
+                                  @Value("${spoonacular.executor.threads:8}") int threads,
+                                  @Value("${spoonacular.executor.queue-capacity:100}") int queueCapacity,
+                                  @Value("${spoonacular.request-timeout-ms:10000}") long requestTimeoutMillis,
+                                  @Value("${spoonacular.breaker.window-size:20}") int breakerWindowSize,
+                                  @Value("${spoonacular.breaker.minimum-calls:10}") int breakerMinimumCalls,
+                                  @Value("${spoonacular.breaker.failure-rate-threshold:50}") double failureRateThreshold,
+                                  @Value("${spoonacular.breaker.slow-call-rate-threshold:80}") double slowCallRateThreshold,
+                                  @Value("${spoonacular.breaker.slow-call-ms:3000}") long slowCallMillis,
+                                  @Value("${spoonacular.breaker.open-ms:30000}") long breakerOpenMillis,
+                                  @Value("${spoonacular.breaker.half-open-probes:3}") int halfOpenProbes,
+                                  @Value("${spoonacular.retry.max-attempts:3}") int retryMaxAttempts,
+                                  @Value("${spoonacular.retry.base-delay-ms:200}") long retryBaseDelayMillis,
+                                  @Value("${spoonacular.retry.max-delay-ms:2000}") long retryMaxDelayMillis,
+                                  @Value("${spoonacular.retry.max-retry-after-ms:5000}") long maxRetryAfterMillis,
+                                  @Value("${spoonacular.hedge.delay-ms:0}") long hedgeDelayMillis) {
         this.recipeRepository = recipeRepository;
+        this.rateLimiter = rateLimiter;
+        this.searchCache = new ExpiringLruCache<>(cacheMaxEntries, cacheTtlSeconds * 1000);
+        this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+
+        /* running out of quota says nothing about whether Spoonacular is healthy */
+        this.circuitBreaker = new CircuitBreaker(breakerWindowSize, breakerMinimumCalls, failureRateThreshold,
+                slowCallRateThreshold, slowCallMillis, breakerOpenMillis, halfOpenProbes,
+                e -> !(e instanceof SpoonacularQuotaExceededException),
+                () -> new SpoonacularUnavailableException("too many recent requests failed or timed out"),
+                System::nanoTime);
+
+        this.retryPolicy = new RetryPolicy(retryMaxAttempts, retryBaseDelayMillis, retryMaxDelayMillis,
+                maxRetryAfterMillis,
+                e -> e instanceof RetryableResponseException || e instanceof IOException,
+                e -> e instanceof RetryableResponseException ? ((RetryableResponseException) e).retryAfterMillis : -1,
+                () -> ThreadLocalRandom.current().nextDouble());
+        this.hedgedRequests = new HedgedRequests(hedgeDelayMillis);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "spoonacular-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
     }
 
     /**
-     * @param url spoonacular API to get
-     * @return API results deserialized as JSON
+     * Stop the Spoonacular thread pool when the application shuts down
      */
-    private JsonElement sendGetRequest(String url) throws Exception {
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
 
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .setHeader("X-RapidAPI-Host", APIHOST)
-                .setHeader("X-RapidAPI-Key", APIKEY)
-                .method("GET", HttpRequest.BodyPublishers.noBody())
-                .build();
+    /**
+     * @param parameters a map of search parameters
+     * @return a canonical form of the parameters (sorted keys, no null values, lower case values) so that
+     * equivalent searches share a cache entry
+     */
+    static String canonicalKey(Map<String, String> parameters) {
 
-        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        return new TreeMap<>(parameters).entrySet()
+                .stream()
+                .filter(e -> e.getValue() != null)
+                .map(e -> e.getKey() + "=" + e.getValue().trim().toLowerCase(Locale.ROOT))
+                .collect(Collectors.joining("&"));
+    }
 
-        if (response.statusCode() != 200) {
-            logger.warn(url);
-            throw new Exception("Request to Spoonacular API failed!");
+    /**
+     * @param future a pending Spoonacular result
+     * @return the result once it is available
+     * @throws Exception the exception the future failed with
+     */
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception)
+                throw (Exception) e.getCause();
+            throw e;
         }
-
-        return parser.fromJson(response.body(), JsonElement.class);
     }
 
     /**
-     * @param result the JSON object representation of the recipe
-     * @return a Recipe object containing the information parsed from the JSON
+     * A response that is worth retrying (429 or 5xx)
      */
-    private Optional<Recipe> parseRecipe(JsonObject result) {
+    private static class RetryableResponseException extends Exception {
+
+        private final int status;
 
-        if (result.get("instructions").isJsonNull()) {
-            return Optional.empty();
+        /**
+         * The delay the Retry-After header asked for, or -1 if there wasn't one
+         */
+        private final long retryAfterMillis;
+
+        RetryableResponseException(int status, long retryAfterMillis) {
+            super("Spoonacular API responded with " + status);
+            this.status = status;
+            this.retryAfterMillis = retryAfterMillis;
         }
+    }
 
-        Recipe recipe = new Recipe()
-                .setName(result.get("title").getAsString())
-                .setPrepTime(result.get("readyInMinutes").getAsInt())
-                .setSpoonacularId(result.get("id").getAsLong())
-                .setSourceURL(result.get("sourceUrl").getAsString())
-                .setInstructions(result.get("instructions").getAsString());
+    /**
+     * @param response a response from the Spoonacular API
+     * @return the delay its Retry-After header asks for (in seconds or as an HTTP date), or -1 if there is none
+     */
+    private static long retryAfterMillis(HttpResponse<?> response) {
 
-        if (!result.get("image").isJsonNull())
-            recipe.setImageURL(result.get("image").getAsString());
+        Optional<String> retryAfter = response.headers().firstValue("Retry-After");
 
-        for (JsonElement e : result.get("extendedIngredients").getAsJsonArray()) {
-            JsonObject o = e.getAsJsonObject();
-            recipe.addIngredient(new Ingredient()
-                    .setName(o.get("name").getAsString()));
+        if (retryAfter.isEmpty())
+            return -1;
 
-            recipe.getVerboseIngredients().add(o.get("original").getAsString());
+        try {
+            return Long.parseLong(retryAfter.get().trim()) * 1000;
+        } catch (NumberFormatException e) {
+            try {
+                ZonedDateTime at = ZonedDateTime.parse(retryAfter.get().trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+                return Math.max(0, Duration.between(ZonedDateTime.now(), at).toMillis());
+            } catch (DateTimeParseException ignored) {
+                return -1;
+            }
         }
+    }
+
+    /**
+     * @param url     spoonacular API to get
+     * @param points  the RapidAPI points the request costs
+     * @param handler reads the result out of the response stream
+     * @return a future of the API results, which completes on the Spoonacular executor (or fails with a
+     * SpoonacularUnavailableException straight away while the circuit breaker is open)
+     */
+    private <T> CompletableFuture<T> sendGetRequest(String url, double points, SpoonacularJsonParser.Handler<T> handler) {
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(requestTimeout)
+                .setHeader("X-RapidAPI-Host", APIHOST)
+                .setHeader("X-RapidAPI-Key", APIKEY)
+                .method("GET", HttpRequest.BodyPublishers.noBody())
+                .build();
+
+        /* every attempt (and hedge) is a GET, so it is safe to send more than once */
+        return circuitBreaker.execute(timer -> retryPolicy.execute(() ->
+                        hedgedRequests.execute(() -> sendOnce(request, points, handler, timer)))
+                .handle((result, e) -> {
+
+                    if (e == null)
+                        return result;
 
-        return Optional.of(recipe);
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+
+                    if (cause instanceof RetryableResponseException) {
+                        logger.warn(url);
+
+                        if (((RetryableResponseException) cause).status == 429)
+                            throw new CompletionException(
+                                    new SpoonacularQuotaExceededException("rejected by the Spoonacular API"));
+
+                        throw new CompletionException(new Exception("Request to Spoonacular API failed!"));
+                    }
+
+                    throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+                }));
+    }
+
+    /**
+     * @param request the request to send
+     * @param points  the RapidAPI points the request costs
+     * @param handler reads the result out of the response stream
+     * @param timer   times the exchange for the circuit breaker, which only starts once the rate limiter lets the
+     *                attempt through
+     * @return a future of the API results from a single attempt at the request
+     */
+    private <T> CompletableFuture<T> sendOnce(HttpRequest request, double points, SpoonacularJsonParser.Handler<T> handler,
+                                              CircuitBreaker.Timer timer) {
+
+        return rateLimiter.acquire(points)
+                .thenCompose(v -> timer.time(() -> client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())))
+                .thenApplyAsync(response -> {
+
+                    /* parse straight from the stream rather than buffering the whole body into a String */
+                    try (JsonReader reader = new JsonReader(
+                            new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+
+                        if (response.statusCode() == 429) {
+                            logger.warn("Spoonacular rate limit reached: " + request.uri());
+                            rateLimiter.onRateLimited();
+                        }
+
+                        if (response.statusCode() == 429 || response.statusCode() >= 500)
+                            throw new CompletionException(
+                                    new RetryableResponseException(response.statusCode(), retryAfterMillis(response)));
+
+                        if (response.statusCode() != 200) {
+                            logger.warn(request.uri().toString());
+                            throw new CompletionException(new Exception("Request to Spoonacular API failed!"));
+                        }
+
+                        return handler.parse(reader);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
     }
 
     /**
@@ -91,6 +317,59 @@ public class SpoonacularServiceImpl implements SpoonacularService {
      */
     @Override
     public List<Recipe> search(Map<String, String> parameters) throws Exception {
+        return await(searchAsync(parameters));
+    }
+
+    /**
+     * @param parameters a map of the search parameters for the Spoonacular API
+     *                   (see https://rapidapi.com/spoonacular/api/recipe-food-nutrition/)
+     * @return a future of the list of Recipe objects returned by the search
+     */
+    @Override
+    public CompletableFuture<List<Recipe>> searchAsync(Map<String, String> parameters) {
+
+        String key = canonicalKey(parameters);
+        List<Recipe> cached = searchCache.get(key);
+
+        if (cached != null)
+            return CompletableFuture.completedFuture(copies(cached));
+
+        /* concurrent identical searches wait on the first one rather than each spending API quota;
+         * every caller gets its own copies of the recipes */
+        return searchFlights.execute(key, () -> searchSpoonacular(parameters)
+                        .thenApply(recipes -> {
+                            searchCache.put(key, copies(recipes));
+                            return recipes;
+                        }))
+                .thenApply(SpoonacularServiceImpl::copies);
+    }
+
+    /**
+     * Forget every cached search, e.g. because a recipe was deleted and cached results still carry its ID.
+     * Deletes are rare, so the whole cache goes rather than looking for the entries that hold the recipe
+     */
+    @Override
+    public void clearCache() {
+        searchCache.invalidateAll();
+    }
+
+    /**
+     * Storing a recipe writes its ID and classification onto it, so the cache never hands out (or keeps) an
+     * instance a caller could store. Recipes that were already stored keep their IDs (see {@link Recipe#copy()}),
+     * which is why deleting a recipe clears the cache
+     *
+     * @param recipes search results
+     * @return fresh copies of the recipes, in the same order
+     */
+    private static List<Recipe> copies(List<Recipe> recipes) {
+        return recipes.stream().map(Recipe::copy).collect(Collectors.toList());
+    }
+
+    /**
+     * @param parameters a map of the search parameters for the Spoonacular API
+     * @return a future of the list of Recipe objects returned by the search
+     */
+    private CompletableFuture<List<Recipe>> searchSpoonacular(Map<String, String> parameters) {
 
         String url = "https://spoonacular-recipe-food-nutrition-v1.p.rapidapi.com/recipes/complexSearch?";
 
@@ -112,6 +391,9 @@ public class SpoonacularServiceImpl implements SpoonacularService {
         if (parameters.get("diet") != null)
             url += "diet=" + parameters.get("diet") + "&";
 
+        if (parameters.get("maxReadyTime") != null)
+            url += "maxReadyTime=" + parameters.get("maxReadyTime") + "&";
+
         if (parameters.get("intolerances") != null)
             url += "intolerances=" + parameters.get("intolerances");
 
@@ -125,34 +407,11 @@ public class SpoonacularServiceImpl implements SpoonacularService {
 
         /* the initial search only includes basic recipe information, so we need to individually look up
          * recipes in a second set of requests to get ingredients, instructions, etc */
-        JsonObject object = sendGetRequest(url).getAsJsonObject();
-
-        /* perform secondary lookup to get detailed recipe information for each recipe */
-        List<String> recipeIds = new ArrayList<>();
-        List<Recipe> recipes = new ArrayList<>();
-        for (JsonElement element : object.get("results").getAsJsonArray()) {
-            String id = element.getAsJsonObject().get("id").getAsString();
-
-            if (recipeRepository.existsBySpoonacularId(Long.parseLong(id))) {
-                recipes.add(recipeRepository.findRecipeBySpoonacularId(Long.parseLong(id)));
-                continue;
-            }
-
-            recipeIds.add(id);
-        }
-
-        /* send batch request */
-        url = "https://spoonacular-recipe-food-nutrition-v1.p.rapidapi.com/recipes/informationBulk?ids=" +
-                recipeIds.stream().map(Object::toString)
-                        .collect(Collectors.joining("%2C"));
-
-        JsonArray array = sendGetRequest(url).getAsJsonArray();
+        int results = parameters.containsKey("number") ? Integer.parseInt(parameters.get("number")) : 10;
 
-        for (JsonElement e : array)
-            parseRecipe(e.getAsJsonObject())
-                    .ifPresent(recipes::add);
-
-        return recipes;
+        return sendGetRequest(url, SpoonacularRateLimiter.complexSearchPoints(results),
+                SpoonacularJsonParser::parseSearchResultIds)
+                .thenCompose(this::lookupRecipes);
     }
 
     /**
@@ -161,46 +420,114 @@ public class SpoonacularServiceImpl implements SpoonacularService {
      */
     @Override
     public List<Recipe> recommend(Set<Recipe> userRecipes) throws Exception {
+        return await(recommendAsync(userRecipes));
+    }
 
-        String url;
+    /**
+     * @param userRecipes the list of recipes saved to a specific user account
+     * @return a future of the list of recommended recipes based on the saved recipes
+     */
+    @Override
+    public CompletableFuture<List<Recipe>> recommendAsync(Set<Recipe> userRecipes) {
 
-        if (userRecipes.size() == 0)
-            url = "https://spoonacular-recipe-food-nutrition-v1.p.rapidapi.com/recipes/156992/similar";
-        else {
+        Long seedId = 156992L;
+
+        if (userRecipes.size() != 0) {
             Recipe r = new ArrayList<>(userRecipes)
                     .get(new Random().nextInt(userRecipes.size()));
 
-            url = "https://spoonacular-recipe-food-nutrition-v1.p.rapidapi.com/recipes/"
-                    + r.getSpoonacularId() + "/similar";
+            seedId = r.getSpoonacularId();
         }
 
-        JsonElement elem = sendGetRequest(url);
+        String url = "https://spoonacular-recipe-food-nutrition-v1.p.rapidapi.com/recipes/"
+                + seedId + "/similar";
 
-        /* perform secondary lookup to get detailed recipe information for each recipe */
-        List<String> recipeIds = new ArrayList<>();
-        List<Recipe> recipes = new ArrayList<>();
-        for (JsonElement element : elem.getAsJsonArray()) {
-            String id = element.getAsJsonObject().get("id").getAsString();
+        return recommendFlights.execute(seedId, () ->
+                        sendGetRequest(url, SpoonacularRateLimiter.similarPoints(), SpoonacularJsonParser::parseIds)
+                                .thenCompose(this::lookupRecipes))
+                .thenApply(ArrayList::new);
+    }
 
-            if (recipeRepository.existsBySpoonacularId(Long.parseLong(id))) {
-                recipes.add(recipeRepository.findRecipeBySpoonacularId(Long.parseLong(id)));
-                continue;
-            }
+    /**
+     * Resolve a page of Spoonacular results using a single database query for the recipes we have already
+     * stored, and a single informationBulk request for the rest
+     *
+     * @param spoonacularIds the Spoonacular IDs of the recipes, in the order they should be returned
+     * @return a future of the detailed recipes, in the same order as the IDs (recipes without instructions
+     * are dropped)
+     */
+    private CompletableFuture<List<Recipe>> lookupRecipes(List<Long> spoonacularIds) {
+
+        if (spoonacularIds.isEmpty())
+            return CompletableFuture.completedFuture(new ArrayList<>());
+
+        Map<Long, Recipe> recipes = new ConcurrentHashMap<>();
+        for (Recipe r : recipeRepository.findAllBySpoonacularIdIn(spoonacularIds))
+            recipes.put(r.getSpoonacularId(), r);
+
+        List<Long> missingIds = spoonacularIds.stream()
+                .filter(id -> !recipes.containsKey(id))
+                .distinct()
+                .collect(Collectors.toList());
 
-            recipeIds.add(id);
+        CompletableFuture<Void> bulkRequest = CompletableFuture.completedFuture(null);
+
+        /* only send the batch request if there is something we don't already have, and only for the IDs
+         * that no concurrent lookup is already fetching */
+        if (!missingIds.isEmpty()) {
+            bulkRequest = recipeFlights.executeAll(missingIds, this::fetchRecipes)
+                    .thenAccept(recipes::putAll);
         }
 
-        /* send batch request */
-        url = "https://spoonacular-recipe-food-nutrition-v1.p.rapidapi.com/recipes/informationBulk?ids=" +
-                recipeIds.stream().map(Object::toString)
+        return bulkRequest.thenApply(v -> spoonacularIds.stream()
+                .distinct()
+                .map(recipes::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * @param spoonacularIds the Spoonacular IDs of recipes to fetch with a single informationBulk request
+     * @return a future of the fetched recipes by Spoonacular ID (recipes without instructions are left out)
+     */
+    private CompletableFuture<Map<Long, Recipe>> fetchRecipes(List<Long> spoonacularIds) {
+
+        String url = "https://spoonacular-recipe-food-nutrition-v1.p.rapidapi.com/recipes/informationBulk?ids=" +
+                spoonacularIds.stream().map(Object::toString)
                         .collect(Collectors.joining("%2C"));
 
-        JsonArray array = sendGetRequest(url).getAsJsonArray();
+        return sendGetRequest(url, SpoonacularRateLimiter.informationBulkPoints(spoonacularIds.size()),
+                SpoonacularJsonParser::parseRecipes)
+                .thenApply(parsed -> {
+                    Map<Long, Recipe> fetched = new HashMap<>();
+                    parsed.forEach(r -> fetched.put(r.getSpoonacularId(), r));
+                    return fetched;
+                });
+    }
 
-        for (JsonElement e : array)
-            parseRecipe(e.getAsJsonObject())
-                    .ifPresent(recipes::add);
+    @Override
+    public String getMetricsName() {
+        return "spoonacular";
+    }
 
-        return recipes;
+    /**
+     * @return the counters of the search cache, request coalescing, the circuit breaker, retries, hedging and
+     * the Spoonacular thread pool
+     */
+    @Override
+    public Map<String, Number> getMetrics() {
+
+        Map<String, Number> metrics = new LinkedHashMap<>();
+        searchCache.getStats().forEach((k, v) -> metrics.put("searchCache." + k, v));
+        searchFlights.getStats().forEach((k, v) -> metrics.put("singleFlight.search." + k, v));
+        recommendFlights.getStats().forEach((k, v) -> metrics.put("singleFlight.recommend." + k, v));
+        recipeFlights.getStats().forEach((k, v) -> metrics.put("singleFlight.recipe." + k, v));
+        circuitBreaker.getStats().forEach((k, v) -> metrics.put("breaker." + k, v));
+        retryPolicy.getStats().forEach((k, v) -> metrics.put("retry." + k, v));
+        hedgedRequests.getStats().forEach((k, v) -> metrics.put("hedge." + k, v));
+        metrics.put("executor.active", executor.getActiveCount());
+        metrics.put("executor.queued", executor.getQueue().size());
+        metrics.put("executor.completed", executor.getCompletedTaskCount());
+        return metrics;
     }
 }
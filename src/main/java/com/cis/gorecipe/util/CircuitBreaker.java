@@ -0,0 +1,292 @@
+package com.cis.gorecipe.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * A count-based circuit breaker for asynchronous calls. The breaker opens when too many of the most recent calls
+ * failed or were slow, rejects calls while open, and after a cool-down lets a few probe calls through (half-open)
+ * to decide whether to close again
+ */
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private static final byte FAILED = 1;
+
+    private static final byte SLOW = 2;
+
+    /**
+     * How many of the most recent calls the failure and slow call rates are computed over
+     */
+    private final int windowSize;
+
+    /**
+     * How many calls must have been recorded before the breaker may open
+     */
+    private final int minimumCalls;
+
+    /**
+     * The percentage of failed calls at which the breaker opens
+     */
+    private final double failureRateThreshold;
+
+    /**
+     * The percentage of slow calls at which the breaker opens
+     */
+    private final double slowCallRateThreshold;
+
+    /**
+     * How long a call may take before it counts as slow
+     */
+    private final long slowCallNanos;
+
+    /**
+     * How long the breaker stays open before letting probe calls through
+     */
+    private final long openNanos;
+
+    /**
+     * How many probe calls must succeed while half-open before the breaker closes
+     */
+    private final int halfOpenProbes;
+
+    /**
+     * Decides whether an exception says anything about the health of the remote service
+     */
+    private final Predicate<Throwable> isFailure;
+
+    /**
+     * Creates the exception that rejected calls fail with
+     */
+    private final Supplier<? extends RuntimeException> rejection;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * The outcomes of the most recent calls as a ring buffer of FAILED and SLOW flags
+     */
+    private final byte[] outcomes;
+
+    private int next;
+
+    private int recorded;
+
+    private int failures;
+
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int probesInFlight;
+
+    private int probeSuccesses;
+
+    private long rejected;
+
+    private long timesOpened;
+
+    public CircuitBreaker(int windowSize, int minimumCalls, double failureRateThreshold, double slowCallRateThreshold,
+                          long slowCallMillis, long openMillis, int halfOpenProbes, Predicate<Throwable> isFailure,
+                          Supplier<? extends RuntimeException> rejection, LongSupplier nanoClock) {
+        this.windowSize = windowSize;
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallMillis * 1_000_000;
+        this.openNanos = openMillis * 1_000_000;
+        this.halfOpenProbes = halfOpenProbes;
+        this.isFailure = isFailure;
+        this.rejection = rejection;
+        this.nanoClock = nanoClock;
+        this.outcomes = new byte[windowSize];
+    }
+
+    /**
+     * Times the parts of a call that say something about the health of the remote service, e.g. each attempt at
+     * an HTTP request but not the time spent waiting on a rate limiter or backing off between retries
+     */
+    public final class Timer {
+
+        /**
+         * How long the most recently completed timed part took, or -1 if none has completed yet
+         */
+        private volatile long lastNanos = -1;
+
+        /**
+         * @param part a part of the call to time
+         * @return the part's result
+         */
+        public <T> CompletableFuture<T> time(Supplier<CompletableFuture<T>> part) {
+
+            long start = nanoClock.getAsLong();
+
+            CompletableFuture<T> result;
+            try {
+                result = part.get();
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+
+            return result.whenComplete((value, e) -> lastNanos = nanoClock.getAsLong() - start);
+        }
+    }
+
+    /**
+     * @param call the call to protect, which is timed as a whole
+     * @return the call's result, or a future failed with the rejection exception if the breaker is open
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> call) {
+        return execute(timer -> timer.time(call));
+    }
+
+    /**
+     * @param call the call to protect; whether it was slow is judged by the part it timed last, which is the one
+     *             that decided its outcome (e.g. the last retry, or the hedge that won), and a call that timed
+     *             nothing is never slow
+     * @return the call's result, or a future failed with the rejection exception if the breaker is open
+     */
+    public <T> CompletableFuture<T> execute(Function<Timer, CompletableFuture<T>> call) {
+
+        if (!tryAcquire())
+            return CompletableFuture.failedFuture(rejection.get());
+
+        Timer timer = new Timer();
+
+        CompletableFuture<T> result;
+        try {
+            result = call.apply(timer);
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        return result.whenComplete((value, e) -> onComplete(timer.lastNanos, e));
+    }
+
+    /**
+     * @return the state of the breaker, moving from open to half-open once the cool-down has passed
+     */
+    public synchronized State getState() {
+
+        if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probeSuccesses = 0;
+        }
+
+        return state;
+    }
+
+    private synchronized boolean tryAcquire() {
+
+        switch (getState()) {
+            case OPEN:
+                rejected++;
+                return false;
+            case HALF_OPEN:
+                if (probesInFlight + probeSuccesses >= halfOpenProbes) {
+                    rejected++;
+                    return false;
+                }
+                probesInFlight++;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    private synchronized void onComplete(long nanos, Throwable e) {
+
+        Throwable cause = e;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException) && cause.getCause() != null)
+            cause = cause.getCause();
+
+        boolean ignored = cause != null && !isFailure.test(cause);
+        boolean failed = cause != null && !ignored;
+        boolean slow = nanos > slowCallNanos;
+
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+
+            if (ignored)
+                return;
+
+            if (failed || slow)
+                open();
+            else if (++probeSuccesses >= halfOpenProbes)
+                close();
+
+            return;
+        }
+
+        /* calls that were started before the breaker opened don't count towards the next window */
+        if (state == State.OPEN || ignored)
+            return;
+
+        if (recorded == windowSize) {
+            byte evicted = outcomes[next];
+            if ((evicted & FAILED) != 0)
+                failures--;
+            if ((evicted & SLOW) != 0)
+                slowCalls--;
+        } else {
+            recorded++;
+        }
+
+        outcomes[next] = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        next = (next + 1) % windowSize;
+
+        if (failed)
+            failures++;
+        if (slow)
+            slowCalls++;
+
+        if (recorded >= minimumCalls
+                && (failures * 100.0 / recorded >= failureRateThreshold
+                || slowCalls * 100.0 / recorded >= slowCallRateThreshold))
+            open();
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        timesOpened++;
+        resetWindow();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    /**
+     * @return the state of the breaker (0 closed, 1 open, 2 half-open), the failure and slow call rates of the
+     * current window, and how often calls were rejected and the breaker opened
+     */
+    public synchronized Map<String, Number> getStats() {
+
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("state", getState().ordinal());
+        stats.put("failureRate", recorded == 0 ? 0 : failures * 100.0 / recorded);
+        stats.put("slowCallRate", recorded == 0 ? 0 : slowCalls * 100.0 / recorded);
+        stats.put("rejected", rejected);
+        stats.put("opened", timesOpened);
+        return stats;
+    }
+}
@@ -0,0 +1,177 @@
+package com.cis.gorecipe.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * A bounded, thread-safe cache that evicts the least recently used entry once it is full and
+ * drops entries once they are older than a fixed time-to-live
+ *
+ * @param <K> the type of the cache keys
+ * @param <V> the type of the cached values
+ */
+public class ExpiringLruCache<K, V> {
+
+    /**
+     * The cached values in access order (least recently used first)
+     */
+    private final LinkedHashMap<K, Entry<V>> entries;
+
+    /**
+     * The maximum number of entries held before the least recently used one is evicted
+     */
+    private final int maxEntries;
+
+    /**
+     * How long an entry stays valid after it has been written, in nanoseconds
+     */
+    private final long ttlNanos;
+
+    /**
+     * The source of the current time in nanoseconds (overridable for testing)
+     */
+    private final LongSupplier clock;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long expirations;
+
+    /**
+     * @param maxEntries the maximum number of entries to keep
+     * @param ttlMillis  how long an entry stays valid after it has been written
+     */
+    public ExpiringLruCache(int maxEntries, long ttlMillis) {
+        this(maxEntries, ttlMillis, System::nanoTime);
+    }
+
+    /**
+     * @param maxEntries the maximum number of entries to keep
+     * @param ttlMillis  how long an entry stays valid after it has been written
+     * @param clock      a monotonic source of the current time in nanoseconds
+     */
+    public ExpiringLruCache(int maxEntries, long ttlMillis, LongSupplier clock) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlMillis * 1_000_000L;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @param key the key to look up
+     * @return the cached value, or null if there is no live entry for the key
+     */
+    public synchronized V get(K key) {
+
+        Entry<V> entry = entries.get(key);
+
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+
+        if (clock.getAsLong() - entry.writtenAt >= ttlNanos) {
+            entries.remove(key);
+            expirations++;
+            misses++;
+            return null;
+        }
+
+        hits++;
+        return entry.value;
+    }
+
+    /**
+     * @param key   the key to store the value under
+     * @param value the value to cache
+     */
+    public synchronized void put(K key, V value) {
+
+        entries.put(key, new Entry<>(value, clock.getAsLong()));
+
+        if (entries.size() > maxEntries)
+            evictExpired();
+
+        /* evict least recently used entries until we are back under the bound */
+        Iterator<Map.Entry<K, Entry<V>>> iterator = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * @param key the key whose entry should be removed
+     */
+    public synchronized void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Remove every entry from the cache
+     */
+    public synchronized void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * @return the number of entries currently held (including any that have expired but were not yet read)
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the hit, miss, eviction, and expiration counters along with the current size
+     */
+    public synchronized Map<String, Number> getStats() {
+
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("size", entries.size());
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("expirations", expirations);
+        return stats;
+    }
+
+    /**
+     * Drop every entry that has outlived the TTL
+     */
+    private void evictExpired() {
+
+        long now = clock.getAsLong();
+        Iterator<Entry<V>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().writtenAt >= ttlNanos) {
+                iterator.remove();
+                expirations++;
+            }
+        }
+    }
+
+    /**
+     * A cached value along with the time at which it was written
+     */
+    private static class Entry<V> {
+
+        private final V value;
+
+        private final long writtenAt;
+
+        private Entry(V value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.cis.gorecipe.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Cuts tail latency by sending a second copy of a slow request: if the first request hasn't answered after a delay
+ * (ideally around its 95th percentile latency), a hedge is sent and whichever answers first successfully wins. Only
+ * use this for idempotent requests
+ */
+public class HedgedRequests {
+
+    /**
+     * How long to wait for the first request before hedging, or 0 to never hedge
+     */
+    private final long delayMillis;
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder hedgesSent = new LongAdder();
+
+    private final LongAdder hedgesWon = new LongAdder();
+
+    public HedgedRequests(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * @param send sends one copy of the request
+     * @return the first successful response, or the last failure if every copy failed
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> send) {
+
+        requests.increment();
+
+        if (delayMillis <= 0)
+            return send.get();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger outstanding = new AtomicInteger(1);
+
+        sendCopy(send).whenComplete((value, e) -> onOutcome(result, outstanding, value, e, false));
+
+        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS).execute(() -> {
+
+            if (result.isDone())
+                return;
+
+            outstanding.incrementAndGet();
+            hedgesSent.increment();
+
+            sendCopy(send).whenComplete((value, e) -> onOutcome(result, outstanding, value, e, true));
+        });
+
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> sendCopy(Supplier<CompletableFuture<T>> send) {
+        try {
+            return send.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private <T> void onOutcome(CompletableFuture<T> result, AtomicInteger outstanding, T value, Throwable e,
+                               boolean isHedge) {
+
+        /* a failure only fails the result once no other copy can still succeed */
+        if (e == null) {
+            if (result.complete(value) && isHedge)
+                hedgesWon.increment();
+        } else if (outstanding.decrementAndGet() == 0) {
+            result.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * @return how many requests were made, how many were hedged, and how often the hedge answered first
+     */
+    public Map<String, Number> getStats() {
+
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.sum());
+        stats.put("sent", hedgesSent.sum());
+        stats.put("won", hedgesWon.sum());
+        stats.put("lost", hedgesSent.sum() - hedgesWon.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,369 @@
+package com.cis.gorecipe.util;
+
+import org.roaringbitmap.BatchIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory, thread-safe index that answers "what can I cook with these ingredients". Every ingredient name is
+ * dictionary-encoded to an int, and each ingredient keeps a compressed (Roaring) bitmap of the recipes that use
+ * it. A query counts, for every recipe that uses any of the given ingredients, how many of them it uses, and
+ * ranks the recipes by how few of their ingredients are missing.
+ * <p>
+ * Recipes are identified by a long key (e.g. a recipe ID) and get a dense internal number. Removed recipes are
+ * cleared from the bitmaps straight away, and their numbers are not reused.
+ */
+public class IngredientIndex {
+
+    /**
+     * How well a recipe is covered by a set of ingredients
+     */
+    public static class Match {
+
+        private final long key;
+
+        private final int matched;
+
+        private final int missing;
+
+        private Match(long key, int matched, int missing) {
+            this.key = key;
+            this.matched = matched;
+            this.missing = missing;
+        }
+
+        /**
+         * @return the key of the recipe
+         */
+        public long getKey() {
+            return key;
+        }
+
+        /**
+         * @return how many of the recipe's ingredients were given
+         */
+        public int getMatched() {
+            return matched;
+        }
+
+        /**
+         * @return how many of the recipe's ingredients were not given
+         */
+        public int getMissing() {
+            return missing;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * The code of every ingredient name
+     */
+    private final Map<String, Integer> codes = new HashMap<>();
+
+    /**
+     * The recipes (by internal number) that use each ingredient (by code)
+     */
+    private final List<RoaringBitmap> recipesByIngredient = new ArrayList<>();
+
+    private final Map<Long, Integer> recipesByKey = new HashMap<>();
+
+    private long[] keys = new long[16];
+
+    /**
+     * The ingredient codes of each recipe (by internal number), null once the recipe has been removed
+     */
+    private int[][] ingredients = new int[16][];
+
+    /**
+     * How many ingredients each recipe (by internal number) has, kept apart from {@link #ingredients} so that
+     * ranking reads one small array; -1 once the recipe has been removed
+     */
+    private short[] lengths = new short[16];
+
+    private int maxRecipe;
+
+    private final AtomicLong queries = new AtomicLong();
+
+    /**
+     * Per-thread counters for {@link #match}, reused between queries so that a query over a large catalog does not
+     * allocate (and clear) an array the size of the catalog
+     */
+    private final ThreadLocal<byte[]> counters = ThreadLocal.withInitial(() -> new byte[0]);
+
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * @param name an ingredient name
+     * @return the name as it is indexed (lower case, without surrounding whitespace)
+     */
+    public static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Add a recipe, replacing the recipe with the same key if there is one
+     *
+     * @param key             the key that queries return for the recipe
+     * @param ingredientNames the names of the recipe's ingredients
+     */
+    public void put(long key, Collection<String> ingredientNames) {
+
+        lock.writeLock().lock();
+        try {
+            removeLocked(key);
+            addLocked(key, ingredientNames);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a recipe unless a recipe with the same key is already indexed
+     *
+     * @param key             the key that queries return for the recipe
+     * @param ingredientNames the names of the recipe's ingredients
+     * @return whether the recipe was added
+     */
+    public boolean putIfAbsent(long key, Collection<String> ingredientNames) {
+
+        lock.writeLock().lock();
+        try {
+            if (recipesByKey.containsKey(key))
+                return false;
+
+            addLocked(key, ingredientNames);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param key the key of the recipe to remove
+     * @return whether there was a recipe with the key
+     */
+    public boolean remove(long key) {
+
+        lock.writeLock().lock();
+        try {
+            return removeLocked(key);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many recipes are indexed
+     */
+    public int size() {
+
+        lock.readLock().lock();
+        try {
+            return recipesByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param ingredientNames the ingredients on hand
+     * @param maxMissing      the most ingredients a recipe may need beyond the ones on hand (0 for recipes that
+     *                        can be cooked with nothing else)
+     * @param limit           the most recipes to return
+     * @return the recipes that use at least one of the ingredients and miss at most maxMissing of their own, with
+     * the fewest missing first, then the most matched, then the oldest
+     */
+    public List<Match> match(Collection<String> ingredientNames, int maxMissing, int limit) {
+
+        queries.incrementAndGet();
+        maxMissing = Math.min(maxMissing, 0xFF);
+
+        lock.readLock().lock();
+        try {
+            Set<Integer> given = new HashSet<>();
+            for (String name : ingredientNames) {
+                Integer code = codes.get(normalize(name));
+                if (code != null)
+                    given.add(code);
+            }
+
+            if (given.isEmpty() || limit < 1)
+                return new ArrayList<>();
+
+            /* count how many of the given ingredients each recipe uses (saturating at 255), one pass over each
+             * bitmap */
+            if (counters.get().length < maxRecipe)
+                counters.set(new byte[keys.length]);
+            byte[] matched = counters.get();
+
+            int[] batch = new int[BATCH_SIZE];
+            RoaringBitmap candidates = new RoaringBitmap();
+            for (int code : given) {
+                RoaringBitmap recipes = recipesByIngredient.get(code);
+                candidates.or(recipes);
+
+                BatchIterator iterator = recipes.getBatchIterator();
+                while (iterator.hasNext()) {
+                    int n = iterator.nextBatch(batch);
+                    for (int i = 0; i < n; i++) {
+                        if (matched[batch[i]] != -1)
+                            matched[batch[i]]++;
+                    }
+                }
+            }
+
+            /* rank by (missing, most matched, number) packed into a long, so that smaller is better, and keep the
+             * best in a max-heap */
+            long[] heap = new long[limit];
+            int heapSize = 0;
+
+            /* only recipes that use one of the given ingredients were counted, so only they need ranking (and
+             * their counters resetting for the next query) */
+            BatchIterator iterator = candidates.getBatchIterator();
+            while (iterator.hasNext()) {
+                int n = iterator.nextBatch(batch);
+                for (int i = 0; i < n; i++) {
+                    int recipe = batch[i];
+                    int count = matched[recipe] & 0xFF;
+                    int missing = lengths[recipe] - count;
+
+                    if (missing > maxMissing || lengths[recipe] < 0)
+                        continue;
+
+                    long rank = (long) missing << 55 | (long) (0xFF - count) << 47 | recipe;
+
+                    if (heapSize < limit) {
+                        heap[heapSize] = rank;
+                        siftUp(heap, heapSize++);
+                    } else if (rank < heap[0]) {
+                        heap[0] = rank;
+                        siftDown(heap, heapSize);
+                    }
+                }
+            }
+
+            long[] ranks = Arrays.copyOf(heap, heapSize);
+            Arrays.sort(ranks);
+
+            List<Match> matches = new ArrayList<>(ranks.length);
+            for (long rank : ranks) {
+                int recipe = (int) (rank & ((1L << 47) - 1));
+                int missing = (int) (rank >>> 55);
+                matches.add(new Match(keys[recipe], lengths[recipe] - missing, missing));
+            }
+
+            candidates.forEach((int recipe) -> matched[recipe] = 0);
+
+            return matches;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of recipes, distinct ingredients, compressed bitmap bytes and queries
+     */
+    public Map<String, Number> getStats() {
+
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (RoaringBitmap bitmap : recipesByIngredient)
+                bytes += bitmap.getSizeInBytes();
+
+            Map<String, Number> stats = new LinkedHashMap<>();
+            stats.put("recipes", recipesByKey.size());
+            stats.put("ingredients", codes.size());
+            stats.put("bitmapBytes", bytes);
+            stats.put("queries", queries.get());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addLocked(long key, Collection<String> ingredientNames) {
+
+        int recipe = maxRecipe++;
+
+        if (recipe == keys.length) {
+            keys = Arrays.copyOf(keys, keys.length * 2);
+            ingredients = Arrays.copyOf(ingredients, ingredients.length * 2);
+            lengths = Arrays.copyOf(lengths, lengths.length * 2);
+        }
+
+        Set<Integer> recipeCodes = new TreeSet<>();
+        for (String name : ingredientNames) {
+            if (name == null || name.isBlank())
+                continue;
+
+            recipeCodes.add(codes.computeIfAbsent(normalize(name), n -> {
+                recipesByIngredient.add(new RoaringBitmap());
+                return recipesByIngredient.size() - 1;
+            }));
+        }
+
+        for (int code : recipeCodes)
+            recipesByIngredient.get(code).add(recipe);
+
+        keys[recipe] = key;
+        ingredients[recipe] = recipeCodes.stream().mapToInt(Integer::intValue).toArray();
+        lengths[recipe] = (short) Math.min(recipeCodes.size(), Short.MAX_VALUE);
+        recipesByKey.put(key, recipe);
+    }
+
+    private boolean removeLocked(long key) {
+
+        Integer recipe = recipesByKey.remove(key);
+
+        if (recipe == null)
+            return false;
+
+        for (int code : ingredients[recipe])
+            recipesByIngredient.get(code).remove(recipe);
+
+        ingredients[recipe] = null;
+        lengths[recipe] = -1;
+
+        return true;
+    }
+
+    private static void siftUp(long[] heap, int i) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (heap[i] <= heap[parent])
+                return;
+
+            long swap = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = swap;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(long[] heap, int size) {
+        int i = 0;
+        while (true) {
+            int largest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+
+            if (left < size && heap[left] > heap[largest])
+                largest = left;
+            if (right < size && heap[right] > heap[largest])
+                largest = right;
+            if (largest == i)
+                return;
+
+            long swap = heap[i];
+            heap[i] = heap[largest];
+            heap[largest] = swap;
+            i = largest;
+        }
+    }
+}
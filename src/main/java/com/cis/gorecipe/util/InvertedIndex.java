@@ -0,0 +1,636 @@
+package com.cis.gorecipe.util;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory, thread-safe inverted index that ranks documents against free text queries with BM25. Documents
+ * are identified by a long key (e.g. a recipe ID), may carry a preparation time and tags (e.g. cuisine:italian)
+ * to filter on, and can be added, replaced and removed at any time.
+ * <p>
+ * Each document gets a dense internal number, and every term maps to a posting list of (number, frequency)
+ * pairs packed into ints, which keeps an index of a million recipes to a few hundred megabytes. Removed
+ * documents are only marked as deleted (their postings still count towards document frequencies, as in
+ * Lucene), and the postings are compacted once enough of them have piled up.
+ */
+public class InvertedIndex {
+
+    /**
+     * BM25's term frequency saturation
+     */
+    private static final float K1 = 1.2f;
+
+    /**
+     * BM25's document length normalization
+     */
+    private static final float B = 0.75f;
+
+    /**
+     * Term frequencies are packed into the low bits of each posting, so they saturate at this value
+     */
+    private static final int MAX_FREQUENCY = 0xFF;
+
+    /**
+     * Internal document numbers are packed into the high bits of each posting
+     */
+    private static final int MAX_DOCUMENTS = 1 << 23;
+
+    /**
+     * Compact once this share of the internal document numbers belongs to deleted documents
+     */
+    private static final double COMPACTION_THRESHOLD = 0.25;
+
+    /**
+     * Words that match nearly every recipe and so only slow down queries
+     */
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "into", "is", "it", "of", "on",
+            "or", "the", "then", "to", "until", "with"));
+
+    /**
+     * The postings of one term in ascending document order, each packed as (document << 8 | frequency)
+     */
+    private static final class Postings {
+
+        private int[] entries = new int[4];
+
+        private int size;
+
+        private void add(int document, int frequency) {
+            if (size == entries.length)
+                entries = Arrays.copyOf(entries, size + (size >> 1) + 1);
+
+            entries[size++] = document << 8 | Math.min(frequency, MAX_FREQUENCY);
+        }
+    }
+
+    /**
+     * A document to be indexed, built up field by field
+     */
+    public static class Document {
+
+        private final long key;
+
+        private final Map<String, Integer> terms = new HashMap<>();
+
+        private final Set<String> tags = new HashSet<>();
+
+        private int length;
+
+        private int prepTime = -1;
+
+        /**
+         * @param key the key that searches return for this document
+         */
+        public Document(long key) {
+            this.key = key;
+        }
+
+        /**
+         * @param text   text to index (may be null)
+         * @param weight how many times each of its words counts, so that e.g. words in a name outrank words in a
+         *               long description
+         * @return the document
+         */
+        public Document text(String text, int weight) {
+            for (String term : tokenize(text)) {
+                terms.merge(term, weight, Integer::sum);
+                length += weight;
+            }
+            return this;
+        }
+
+        /**
+         * @param kind  the kind of tag (e.g. cuisine)
+         * @param value the value of the tag (e.g. Italian); blank values are ignored
+         * @return the document
+         */
+        public Document tag(String kind, String value) {
+            if (value != null && !value.isBlank())
+                tags.add(InvertedIndex.tag(kind, value));
+            return this;
+        }
+
+        /**
+         * @param prepTime how many minutes the recipe takes to prepare (null if unknown)
+         * @return the document
+         */
+        public Document prepTime(Integer prepTime) {
+            this.prepTime = prepTime == null ? -1 : prepTime;
+            return this;
+        }
+    }
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Postings> postings = new HashMap<>();
+
+    private final Map<String, Postings> tagPostings = new HashMap<>();
+
+    private final Map<Long, Integer> documentsByKey = new HashMap<>();
+
+    private long[] keys = new long[16];
+
+    private int[] lengths = new int[16];
+
+    private int[] prepTimes = new int[16];
+
+    private final BitSet deleted = new BitSet();
+
+    /**
+     * The next internal document number (live and deleted documents alike)
+     */
+    private int maxDocument;
+
+    private int deletedDocuments;
+
+    /**
+     * The total length of the live documents, for BM25's average document length
+     */
+    private long totalLength;
+
+    private final AtomicLong searches = new AtomicLong();
+
+    /**
+     * Per-thread scores and matched term counts for {@link #search}, reused between queries so that a query over a
+     * large index does not allocate (and clear) arrays the size of the index
+     */
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(0));
+
+    private static final class Scratch {
+
+        private final float[] scores;
+
+        /**
+         * How many of the query's terms each document matched, saturating at 255
+         */
+        private final byte[] hits;
+
+        private Scratch(int capacity) {
+            scores = new float[capacity];
+            hits = new byte[capacity];
+        }
+    }
+
+    private long compactions;
+
+    /**
+     * @param text text to split into terms (may be null)
+     * @return the lower case words of the text, without stop words, with simple plurals folded into their
+     * singular (so that tomatoes matches tomato)
+     */
+    public static List<String> tokenize(String text) {
+
+        List<String> terms = new ArrayList<>();
+
+        if (text == null)
+            return terms;
+
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                String term = stem(text.substring(start, i).toLowerCase(Locale.ROOT));
+                if (term.length() > 1 && !STOP_WORDS.contains(term))
+                    terms.add(term);
+                start = -1;
+            }
+        }
+
+        return terms;
+    }
+
+    /**
+     * @param word a lower case word
+     * @return the word with a plural ending removed
+     */
+    private static String stem(String word) {
+
+        if (word.length() <= 3)
+            return word;
+        if (word.endsWith("ies"))
+            return word.substring(0, word.length() - 3) + "y";
+        if (word.endsWith("oes") || word.endsWith("ches") || word.endsWith("shes") || word.endsWith("sses")
+                || word.endsWith("xes"))
+            return word.substring(0, word.length() - 2);
+        if (word.endsWith("s") && !word.endsWith("ss") && !word.endsWith("us") && !word.endsWith("is"))
+            return word.substring(0, word.length() - 1);
+
+        return word;
+    }
+
+    /**
+     * @param kind  the kind of tag (e.g. cuisine)
+     * @param value the value of the tag (e.g. Italian)
+     * @return the tag as it is indexed and filtered on (e.g. cuisine:italian)
+     */
+    public static String tag(String kind, String value) {
+        return kind + ":" + value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Add a document, replacing the document with the same key if there is one
+     *
+     * @param document the document to add
+     */
+    public void put(Document document) {
+
+        lock.writeLock().lock();
+        try {
+            if (removeLocked(document.key))
+                compactIfNeededLocked();
+
+            addLocked(document);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add a document unless a document with the same key is already indexed
+     *
+     * @param document the document to add
+     * @return whether the document was added
+     */
+    public boolean putIfAbsent(Document document) {
+
+        lock.writeLock().lock();
+        try {
+            if (documentsByKey.containsKey(document.key))
+                return false;
+
+            addLocked(document);
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param key the key of the document to remove
+     * @return whether there was a document with the key
+     */
+    public boolean remove(long key) {
+
+        lock.writeLock().lock();
+        try {
+            boolean removed = removeLocked(key);
+
+            if (removed)
+                compactIfNeededLocked();
+
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param key a document key
+     * @return whether a document with the key is indexed
+     */
+    public boolean contains(long key) {
+
+        lock.readLock().lock();
+        try {
+            return documentsByKey.containsKey(key);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return how many documents are indexed
+     */
+    public int size() {
+
+        lock.readLock().lock();
+        try {
+            return documentsByKey.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param text        the free text query; documents matching any of its terms are ranked by BM25
+     * @param maxPrepTime if not null, only documents with a preparation time of at most this many minutes match
+     * @param tagFilters  groups of tags (see {@link #tag}); a document must carry at least one tag of every group
+     * @param limit       the most keys to return
+     * @return the keys of the best matching documents, best first
+     */
+    public List<Long> search(String text, Integer maxPrepTime, Collection<? extends Collection<String>> tagFilters,
+                             int limit) {
+        return search(text, maxPrepTime, tagFilters, limit, 0);
+    }
+
+    /**
+     * @param text            the free text query; documents matching enough of its terms are ranked by BM25
+     * @param maxPrepTime     if not null, only documents with a preparation time of at most this many minutes match
+     * @param tagFilters      groups of tags (see {@link #tag}); a document must carry at least one tag of every
+     *                        group
+     * @param limit           the most keys to return
+     * @param minTermCoverage the share of the query's distinct terms a document must contain (0 for any one of
+     *                        them, 1 for all of them)
+     * @return the keys of the best matching documents, best first
+     */
+    public List<Long> search(String text, Integer maxPrepTime, Collection<? extends Collection<String>> tagFilters,
+                             int limit, double minTermCoverage) {
+
+        Set<String> terms = new LinkedHashSet<>(tokenize(text));
+        /* matched term counts saturate, so longer queries can't ask for more */
+        int minTerms = Math.min(0xFF, Math.max(1, (int) Math.ceil(minTermCoverage * terms.size())));
+
+        lock.readLock().lock();
+        try {
+            searches.incrementAndGet();
+
+            if (terms.isEmpty() || documentsByKey.isEmpty() || limit < 1)
+                return new ArrayList<>();
+
+            BitSet allowed = allowedDocuments(tagFilters);
+
+            /* terms the index has never seen can't be matched by any document */
+            if (minTerms > terms.stream().filter(postings::containsKey).count())
+                return new ArrayList<>();
+
+            float averageLength = Math.max(1f, (float) totalLength / documentsByKey.size());
+
+            if (scratch.get().scores.length < maxDocument)
+                scratch.set(new Scratch(keys.length));
+            float[] scores = scratch.get().scores;
+            byte[] hits = scratch.get().hits;
+            int[] matched = new int[16];
+            int matchedCount = 0;
+
+            for (String term : terms) {
+                Postings p = postings.get(term);
+                if (p == null)
+                    continue;
+
+                /* document frequencies still count deleted documents until the next compaction, so the
+                 * collection size does as well */
+                float idf = (float) Math.log(1 + (maxDocument - p.size + 0.5) / (p.size + 0.5));
+
+                for (int i = 0; i < p.size; i++) {
+                    int document = p.entries[i] >>> 8;
+                    int frequency = p.entries[i] & MAX_FREQUENCY;
+
+                    if (deleted.get(document) || (allowed != null && !allowed.get(document)))
+                        continue;
+                    if (maxPrepTime != null && (prepTimes[document] < 0 || prepTimes[document] > maxPrepTime))
+                        continue;
+
+                    float norm = K1 * (1 - B + B * lengths[document] / averageLength);
+
+                    if (hits[document] == 0) {
+                        if (matchedCount == matched.length)
+                            matched = Arrays.copyOf(matched, matchedCount * 2);
+                        matched[matchedCount++] = document;
+                    }
+
+                    if (hits[document] != (byte) 0xFF)
+                        hits[document]++;
+                    scores[document] += idf * frequency * (K1 + 1) / (frequency + norm);
+                }
+            }
+
+            /* keep the best documents in a min-heap, breaking ties in favor of older documents */
+            int[] heap = new int[Math.min(limit, matchedCount)];
+            int heapSize = 0;
+
+            for (int i = 0; i < matchedCount; i++) {
+                int document = matched[i];
+
+                if ((hits[document] & 0xFF) < minTerms)
+                    continue;
+
+                if (heapSize < heap.length) {
+                    heap[heapSize] = document;
+                    siftUp(heap, heapSize++, scores);
+                } else if (worse(heap[0], document, scores)) {
+                    heap[0] = document;
+                    siftDown(heap, heapSize, scores);
+                }
+            }
+
+            List<Long> results = new ArrayList<>(heapSize);
+            while (heapSize > 0) {
+                results.add(keys[heap[0]]);
+                heap[0] = heap[--heapSize];
+                siftDown(heap, heapSize, scores);
+            }
+
+            /* only the documents that matched a term were touched, so only they need resetting for the next query */
+            for (int i = 0; i < matchedCount; i++) {
+                scores[matched[i]] = 0;
+                hits[matched[i]] = 0;
+            }
+
+            Collections.reverse(results);
+            return results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return whether document a ranks below document b
+     */
+    private static boolean worse(int a, int b, float[] scores) {
+        return scores[a] < scores[b] || (scores[a] == scores[b] && a > b);
+    }
+
+    private static void siftUp(int[] heap, int i, float[] scores) {
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            if (!worse(heap[i], heap[parent], scores))
+                return;
+
+            int swap = heap[i];
+            heap[i] = heap[parent];
+            heap[parent] = swap;
+            i = parent;
+        }
+    }
+
+    private static void siftDown(int[] heap, int size, float[] scores) {
+        int i = 0;
+        while (true) {
+            int worst = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+
+            if (left < size && worse(heap[left], heap[worst], scores))
+                worst = left;
+            if (right < size && worse(heap[right], heap[worst], scores))
+                worst = right;
+            if (worst == i)
+                return;
+
+            int swap = heap[i];
+            heap[i] = heap[worst];
+            heap[worst] = swap;
+            i = worst;
+        }
+    }
+
+    /**
+     * @return the number of live, deleted and internal documents, distinct terms, searches and compactions
+     */
+    public Map<String, Number> getStats() {
+
+        lock.readLock().lock();
+        try {
+            Map<String, Number> stats = new LinkedHashMap<>();
+            stats.put("documents", documentsByKey.size());
+            stats.put("deletedDocuments", deletedDocuments);
+            stats.put("terms", postings.size());
+            stats.put("tags", tagPostings.size());
+            stats.put("searches", searches.get());
+            stats.put("compactions", compactions);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the documents that carry a tag of every group, or null if there are no groups
+     */
+    private BitSet allowedDocuments(Collection<? extends Collection<String>> tagFilters) {
+
+        if (tagFilters == null)
+            return null;
+
+        BitSet allowed = null;
+
+        for (Collection<String> group : tagFilters) {
+            if (group == null || group.isEmpty())
+                continue;
+
+            BitSet any = new BitSet(maxDocument);
+            for (String tag : group) {
+                Postings p = tagPostings.get(tag);
+                if (p != null)
+                    for (int i = 0; i < p.size; i++)
+                        any.set(p.entries[i] >>> 8);
+            }
+
+            if (allowed == null)
+                allowed = any;
+            else
+                allowed.and(any);
+        }
+
+        return allowed;
+    }
+
+    private void addLocked(Document document) {
+
+        if (maxDocument == MAX_DOCUMENTS)
+            compactLocked();
+        if (maxDocument == MAX_DOCUMENTS)
+            throw new IllegalStateException("The index is full");
+
+        int number = maxDocument++;
+
+        if (number == keys.length) {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            prepTimes = Arrays.copyOf(prepTimes, capacity);
+        }
+
+        keys[number] = document.key;
+        lengths[number] = document.length;
+        prepTimes[number] = document.prepTime;
+
+        for (Map.Entry<String, Integer> term : document.terms.entrySet())
+            postings.computeIfAbsent(term.getKey(), t -> new Postings()).add(number, term.getValue());
+
+        for (String tag : document.tags)
+            tagPostings.computeIfAbsent(tag, t -> new Postings()).add(number, 0);
+
+        documentsByKey.put(document.key, number);
+        totalLength += document.length;
+    }
+
+    private boolean removeLocked(long key) {
+
+        Integer number = documentsByKey.remove(key);
+
+        if (number == null)
+            return false;
+
+        deleted.set(number);
+        deletedDocuments++;
+        totalLength -= lengths[number];
+
+        return true;
+    }
+
+    private void compactIfNeededLocked() {
+        if (deletedDocuments > 1000 && deletedDocuments > maxDocument * COMPACTION_THRESHOLD)
+            compactLocked();
+    }
+
+    /**
+     * Renumber the live documents densely and drop the postings of the deleted ones
+     */
+    private void compactLocked() {
+
+        int[] renumbered = new int[maxDocument];
+        int live = 0;
+
+        for (int number = 0; number < maxDocument; number++) {
+            if (deleted.get(number)) {
+                renumbered[number] = -1;
+                continue;
+            }
+
+            renumbered[number] = live;
+            keys[live] = keys[number];
+            lengths[live] = lengths[number];
+            prepTimes[live] = prepTimes[number];
+            documentsByKey.put(keys[live], live);
+            live++;
+        }
+
+        compactPostings(postings, renumbered);
+        compactPostings(tagPostings, renumbered);
+
+        maxDocument = live;
+        deleted.clear();
+        deletedDocuments = 0;
+        compactions++;
+    }
+
+    private static void compactPostings(Map<String, Postings> postings, int[] renumbered) {
+
+        Iterator<Postings> it = postings.values().iterator();
+        while (it.hasNext()) {
+            Postings p = it.next();
+
+            int size = 0;
+            for (int i = 0; i < p.size; i++) {
+                int number = renumbered[p.entries[i] >>> 8];
+                if (number >= 0)
+                    p.entries[size++] = number << 8 | (p.entries[i] & MAX_FREQUENCY);
+            }
+
+            if (size == 0)
+                it.remove();
+            else {
+                p.size = size;
+                if (size < p.entries.length / 2)
+                    p.entries = Arrays.copyOf(p.entries, size);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.cis.gorecipe.util;
+
+import java.util.Map;
+
+/**
+ * Implemented by any component that wants to publish runtime counters (e.g. cache hit rates) through the
+ * metrics endpoint
+ */
+public interface MetricsSource {
+
+    /**
+     * @return the name the metrics are grouped under (e.g. spoonacular)
+     */
+    String getMetricsName();
+
+    /**
+     * @return a snapshot of the component's current counters
+     */
+    Map<String, Number> getMetrics();
+}
@@ -0,0 +1,88 @@
+package com.cis.gorecipe.util;
+
+import com.cis.gorecipe.model.RestrictionType;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of which ingredients violate each dietary restriction, for working out which restrictions
+ * a recipe is compatible with. A recipe is compatible with a restriction if it fits a diet that implies the
+ * restriction (e.g. vegan implies dairy free), or if the restriction's disallowed ingredients are known and the
+ * recipe uses none of them. A restriction that no diet implies and that has no ingredient data can't be judged
+ * at all: no recipe is vouched for, so filters should leave it out (see {@link #getKnownMask()}) rather than
+ * hide every recipe
+ */
+public class RestrictionRules {
+
+    /**
+     * The names (lower case) of the ingredients each restriction disallows, for the restrictions we have data for
+     */
+    private final Map<RestrictionType, Set<String>> disallowed = new EnumMap<>(RestrictionType.class);
+
+    /**
+     * @param disallowedByRestriction the names of the ingredients disallowed by each named restriction;
+     *                                restrictions with a name that isn't a {@link RestrictionType} are ignored
+     */
+    public RestrictionRules(Map<String, ? extends Collection<String>> disallowedByRestriction) {
+
+        disallowedByRestriction.forEach((name, ingredients) -> RestrictionType.fromLabel(name).ifPresent(type -> {
+            Set<String> names = disallowed.computeIfAbsent(type, t -> new HashSet<>());
+            for (String ingredient : ingredients)
+                if (ingredient != null)
+                    names.add(normalize(ingredient));
+        }));
+    }
+
+    /**
+     * @param diets       a comma separated list of the diets the recipe fits (may be null)
+     * @param ingredients the names of the recipe's ingredients
+     * @return the mask of the restrictions the recipe is compatible with
+     */
+    public int classify(String diets, Collection<String> ingredients) {
+
+        List<String> recipeDiets = new ArrayList<>();
+        if (diets != null)
+            for (String diet : diets.split(","))
+                recipeDiets.add(normalize(diet));
+
+        int mask = 0;
+
+        for (RestrictionType type : RestrictionType.values()) {
+            if (type.isImpliedBy(recipeDiets)) {
+                mask |= type.getBit();
+                continue;
+            }
+
+            Set<String> names = disallowed.get(type);
+            if (names != null && ingredients.stream().noneMatch(i -> i != null && names.contains(normalize(i))))
+                mask |= type.getBit();
+        }
+
+        return mask;
+    }
+
+    /**
+     * @return the mask of the restrictions that recipes can be judged against, i.e. those implied by some diet or
+     * with disallowed ingredient data
+     */
+    public int getKnownMask() {
+
+        int mask = 0;
+        for (RestrictionType type : RestrictionType.values())
+            if (type.isImpliedByAnyDiet() || disallowed.containsKey(type))
+                mask |= type.getBit();
+
+        return mask;
+    }
+
+    /**
+     * @return how many restrictions have disallowed ingredient data
+     */
+    public int size() {
+        return disallowed.size();
+    }
+
+    private static String normalize(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+}
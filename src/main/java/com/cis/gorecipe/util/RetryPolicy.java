@@ -0,0 +1,153 @@
+package com.cis.gorecipe.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Retries failed asynchronous calls with exponential backoff and jitter. A delay requested by the remote service
+ * (e.g. a Retry-After header) is honoured as long as it isn't longer than we are willing to wait. Only use this for
+ * idempotent calls
+ */
+public class RetryPolicy {
+
+    /**
+     * The most attempts made for one call, including the first
+     */
+    private final int maxAttempts;
+
+    /**
+     * The backoff before the first retry, which doubles with every further retry
+     */
+    private final long baseDelayMillis;
+
+    /**
+     * The longest backoff we choose ourselves
+     */
+    private final long maxDelayMillis;
+
+    /**
+     * The longest delay the remote service may ask for before we give up instead of retrying
+     */
+    private final long maxRetryAfterMillis;
+
+    /**
+     * Decides which failures are worth retrying
+     */
+    private final Predicate<Throwable> isRetryable;
+
+    /**
+     * The delay the remote service asked for with a failure, or a negative number if it didn't ask for one
+     */
+    private final ToLongFunction<Throwable> retryAfterMillis;
+
+    private final DoubleSupplier random;
+
+    private final LongAdder attempts = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder exhausted = new LongAdder();
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, long maxRetryAfterMillis,
+                       Predicate<Throwable> isRetryable, ToLongFunction<Throwable> retryAfterMillis,
+                       DoubleSupplier random) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.maxRetryAfterMillis = maxRetryAfterMillis;
+        this.isRetryable = isRetryable;
+        this.retryAfterMillis = retryAfterMillis;
+        this.random = random;
+    }
+
+    /**
+     * @param attempt makes one attempt at the call
+     * @return the result of the first successful attempt, or the failure of the last attempt
+     */
+    public <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt) {
+        return execute(attempt, 1);
+    }
+
+    private <T> CompletableFuture<T> execute(Supplier<CompletableFuture<T>> attempt, int attemptNumber) {
+
+        attempts.increment();
+
+        CompletableFuture<T> result;
+        try {
+            result = attempt.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        return result.handle((value, e) -> {
+
+            if (e == null)
+                return CompletableFuture.completedFuture(value);
+
+            Throwable cause = unwrap(e);
+
+            if (!isRetryable.test(cause))
+                return CompletableFuture.<T>failedFuture(cause);
+
+            long delay = attemptNumber < maxAttempts ? backoffMillis(attemptNumber, retryAfterMillis.applyAsLong(cause)) : -1;
+
+            if (delay < 0) {
+                exhausted.increment();
+                return CompletableFuture.<T>failedFuture(cause);
+            }
+
+            retries.increment();
+
+            /* the delayed executor only triggers the next attempt, which does its own work asynchronously */
+            return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                    .thenCompose(v -> execute(attempt, attemptNumber + 1));
+        }).thenCompose(f -> f);
+    }
+
+    /**
+     * @param attemptNumber    how many attempts have failed so far
+     * @param retryAfterMillis the delay the remote service asked for, or a negative number if it didn't ask
+     * @return how long to wait before the next attempt, or a negative number if the remote service asked us to
+     * wait longer than we are willing to
+     */
+    long backoffMillis(int attemptNumber, long retryAfterMillis) {
+
+        if (retryAfterMillis > maxRetryAfterMillis)
+            return -1;
+
+        /* "equal jitter": half of the exponential delay is fixed, the other half random, so that clients that
+         * failed together don't retry together */
+        long exponential = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attemptNumber - 1, 30));
+        long jittered = exponential / 2 + (long) (random.getAsDouble() * (exponential - exponential / 2));
+
+        return Math.max(jittered, retryAfterMillis);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof ExecutionException) && e.getCause() != null)
+            e = e.getCause();
+        return e;
+    }
+
+    /**
+     * @return how many attempts were made, how many of them were retries, and how many calls failed after using
+     * up their retries
+     */
+    public Map<String, Number> getStats() {
+
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("attempts", attempts.sum());
+        stats.put("retries", retries.sum());
+        stats.put("exhausted", exhausted.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,140 @@
+package com.cis.gorecipe.util;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls that share a key: the first caller performs the call, and every caller that arrives
+ * while it is still running waits on the same result instead of making a call of its own
+ *
+ * @param <K> the type of the keys that identify equivalent calls
+ * @param <V> the type of the call results
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * The calls that are currently running, by key
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * How many calls were actually performed
+     */
+    private final AtomicLong calls = new AtomicLong();
+
+    /**
+     * How many callers were given the result of a call that was already running
+     */
+    private final AtomicLong shared = new AtomicLong();
+
+    /**
+     * @param key  identifies the call
+     * @param call performs the call if no equivalent call is running
+     * @return a future of the call's result
+     */
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> call) {
+
+        CompletableFuture<V> pending = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, pending);
+
+        if (running != null) {
+            shared.incrementAndGet();
+            return running.copy();
+        }
+
+        calls.incrementAndGet();
+
+        CompletableFuture<V> result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+
+        result.whenComplete((value, e) -> {
+            inFlight.remove(key, pending);
+
+            if (e != null)
+                pending.completeExceptionally(e);
+            else
+                pending.complete(value);
+        });
+
+        return pending.copy();
+    }
+
+    /**
+     * Resolve many keys at once: keys that are already being resolved are waited on, and the remaining keys are
+     * resolved together in a single call
+     *
+     * @param keys the keys to resolve
+     * @param call resolves a list of keys that no one else is resolving, returning the values it found by key
+     * @return a future of the values that were found by key (keys without a value are left out)
+     */
+    public CompletableFuture<Map<K, V>> executeAll(Collection<K> keys, Function<List<K>, CompletableFuture<Map<K, V>>> call) {
+
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        Map<K, CompletableFuture<V>> owned = new LinkedHashMap<>();
+
+        for (K key : new LinkedHashSet<>(keys)) {
+            CompletableFuture<V> pending = new CompletableFuture<>();
+            CompletableFuture<V> running = inFlight.putIfAbsent(key, pending);
+
+            if (running != null) {
+                shared.incrementAndGet();
+                futures.put(key, running);
+            } else {
+                owned.put(key, pending);
+                futures.put(key, pending);
+            }
+        }
+
+        if (!owned.isEmpty()) {
+            calls.incrementAndGet();
+
+            CompletableFuture<Map<K, V>> result;
+            try {
+                result = call.apply(new ArrayList<>(owned.keySet()));
+            } catch (RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+
+            result.whenComplete((values, e) -> owned.forEach((key, pending) -> {
+                inFlight.remove(key, pending);
+
+                if (e != null)
+                    pending.completeExceptionally(e);
+                else
+                    pending.complete(values.get(key));
+            }));
+        }
+
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    Map<K, V> values = new LinkedHashMap<>();
+                    futures.forEach((key, future) -> {
+                        V value = future.join();
+                        if (value != null)
+                            values.put(key, value);
+                    });
+                    return values;
+                });
+    }
+
+    /**
+     * @return how many calls were performed, how many callers shared a running call, and how many calls are
+     * running right now
+     */
+    public Map<String, Number> getStats() {
+
+        Map<String, Number> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.get());
+        stats.put("shared", shared.get());
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+}
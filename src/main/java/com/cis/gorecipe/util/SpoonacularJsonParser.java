@@ -0,0 +1,211 @@
+package com.cis.gorecipe.util;
+
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A utility class for parsing Spoonacular API responses straight from the response stream. Only the fields that
+ * GoRecipe stores are read; everything else (nutrition, wine pairings, etc.) is skipped without being built
+ * into memory.
+ */
+public class SpoonacularJsonParser {
+
+    /**
+     * Reads a value of type T from a JSON stream
+     */
+    @FunctionalInterface
+    public interface Handler<T> {
+        T parse(JsonReader reader) throws IOException;
+    }
+
+    /**
+     * @param reader a complexSearch response
+     * @return the Spoonacular IDs of the recipes in the search results, in ranked order
+     */
+    public static List<Long> parseSearchResultIds(JsonReader reader) throws IOException {
+
+        List<Long> ids = new ArrayList<>();
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("results"))
+                ids = parseIds(reader);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+
+        return ids;
+    }
+
+    /**
+     * @param reader an array of objects with an id field (e.g. a similar recipes response)
+     * @return the IDs, in order
+     */
+    public static List<Long> parseIds(JsonReader reader) throws IOException {
+
+        List<Long> ids = new ArrayList<>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("id"))
+                    ids.add(reader.nextLong());
+                else
+                    reader.skipValue();
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+
+        return ids;
+    }
+
+    /**
+     * @param reader an informationBulk response
+     * @return the recipes in the response (recipes without instructions are dropped)
+     */
+    public static List<Recipe> parseRecipes(JsonReader reader) throws IOException {
+
+        List<Recipe> recipes = new ArrayList<>();
+
+        reader.beginArray();
+        while (reader.hasNext())
+            parseRecipe(reader).ifPresent(recipes::add);
+        reader.endArray();
+
+        return recipes;
+    }
+
+    /**
+     * @param reader a stream positioned at the start of a recipe object
+     * @return a Recipe object containing the information parsed from the JSON, or nothing if the recipe
+     * has no instructions
+     */
+    private static Optional<Recipe> parseRecipe(JsonReader reader) throws IOException {
+
+        Recipe recipe = new Recipe();
+        boolean hasInstructions = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "id":
+                    recipe.setSpoonacularId(reader.nextLong());
+                    break;
+                case "title":
+                    recipe.setName(nextStringOrNull(reader));
+                    break;
+                case "readyInMinutes":
+                    recipe.setPrepTime(reader.nextInt());
+                    break;
+                case "sourceUrl":
+                    recipe.setSourceURL(nextStringOrNull(reader));
+                    break;
+                case "image":
+                    recipe.setImageURL(nextStringOrNull(reader));
+                    break;
+                case "instructions":
+                    recipe.setInstructions(nextStringOrNull(reader));
+                    hasInstructions = recipe.getInstructions() != null;
+                    break;
+                case "cuisines":
+                    recipe.setCuisines(nextStringList(reader));
+                    break;
+                case "diets":
+                    recipe.setDiets(nextStringList(reader));
+                    break;
+                case "extendedIngredients":
+                    parseIngredients(reader, recipe);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        return hasInstructions ? Optional.of(recipe) : Optional.empty();
+    }
+
+    /**
+     * @param reader a stream positioned at the start of an extendedIngredients array
+     * @param recipe the recipe that the ingredients are added to
+     */
+    private static void parseIngredients(JsonReader reader, Recipe recipe) throws IOException {
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+
+            String name = null;
+            String original = null;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "name":
+                        name = nextStringOrNull(reader);
+                        break;
+                    case "original":
+                        original = nextStringOrNull(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (name != null)
+                recipe.addIngredient(new Ingredient().setName(name));
+
+            if (original != null)
+                recipe.getVerboseIngredients().add(original);
+        }
+        reader.endArray();
+    }
+
+    /**
+     * @param reader a stream positioned at an array of strings or a null value
+     * @return the lower case strings joined with commas, or null if there were none
+     */
+    private static String nextStringList(JsonReader reader) throws IOException {
+
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        List<String> values = new ArrayList<>();
+
+        reader.beginArray();
+        while (reader.hasNext()) {
+            String value = nextStringOrNull(reader);
+            if (value != null)
+                values.add(value.toLowerCase());
+        }
+        reader.endArray();
+
+        return values.isEmpty() ? null : String.join(", ", values);
+    }
+
+    /**
+     * @param reader a stream positioned at a string or null value
+     * @return the string, or null if the value was null
+     */
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+
+        return reader.nextString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.cis.gorecipe.util;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks that keys are hashed onto, so that work on the same key is serialized while work on
+ * unrelated keys mostly runs in parallel, without keeping a lock per key or a single global lock
+ */
+public class StripedLocks {
+
+    private final ReentrantLock[] stripes;
+
+    /**
+     * How often a thread had to wait for a stripe another thread was holding
+     */
+    private final AtomicLong contended = new AtomicLong();
+
+    /**
+     * Releases the stripes acquired by {@link #lockAll(Collection)}
+     */
+    public interface Held extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    public StripedLocks(int stripes) {
+        this.stripes = new ReentrantLock[Math.max(1, stripes)];
+        for (int i = 0; i < this.stripes.length; i++)
+            this.stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * Lock the stripes of all of the keys. Stripes are always taken in ascending order, so two threads locking
+     * overlapping sets of keys can't deadlock
+     *
+     * @param keys the keys to lock
+     * @return a handle that releases the locks when closed
+     */
+    public Held lockAll(Collection<?> keys) {
+
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (Object key : keys)
+            indexes.add(stripeOf(key));
+
+        for (int i : indexes) {
+            if (!stripes[i].tryLock()) {
+                contended.incrementAndGet();
+                stripes[i].lock();
+            }
+        }
+
+        return () -> {
+            for (int i : indexes.descendingSet())
+                stripes[i].unlock();
+        };
+    }
+
+    private int stripeOf(Object key) {
+
+        /* spread the hash so that keys that differ only in their high bits land on different stripes */
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 16);
+        return Math.floorMod(h, stripes.length);
+    }
+
+    /**
+     * @return how often a thread had to wait for a stripe
+     */
+    public long getContended() {
+        return contended.get();
+    }
+}
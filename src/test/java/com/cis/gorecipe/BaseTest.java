@@ -9,6 +9,8 @@ import com.cis.gorecipe.service.S3Service;
 import com.cis.gorecipe.service.SpoonacularService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.BeforeClass;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.jdbc.EmbeddedDatabaseConnection;
@@ -25,6 +27,7 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.web.context.WebApplicationContext;
 import org.testcontainers.containers.MySQLContainer;
 
+import javax.persistence.EntityManagerFactory;
 import java.util.TimeZone;
 
 import static org.springframework.test.web.servlet.setup.MockMvcBuilders.webAppContextSetup;
@@ -95,11 +98,36 @@ public abstract class BaseTest {
     @Autowired
     protected MockMvc mockMvc;
 
+    @Autowired
+    protected EntityManagerFactory entityManagerFactory;
+
     public BaseTest() {
         serializer.registerModule(new JavaTimeModule());
         serializer.setTimeZone(TimeZone.getTimeZone("EST"));
     }
 
+    /**
+     * An action that may read from the database, such as a MockMvc request
+     */
+    @FunctionalInterface
+    protected interface DatabaseAction {
+        void run() throws Exception;
+    }
+
+    /**
+     * @param action an action to run, such as a MockMvc request
+     * @return how many SQL statements Hibernate prepared while it ran, so that tests can fail on N+1 queries
+     */
+    protected long countStatements(DatabaseAction action) throws Exception {
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        statistics.clear();
+        action.run();
+
+        return statistics.getPrepareStatementCount();
+    }
+
     @BeforeClass
     public void setupMockMvc() {
         mockMvc = webAppContextSetup(wac).build();
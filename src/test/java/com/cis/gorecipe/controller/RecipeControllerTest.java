@@ -1,24 +1,45 @@
 package com.cis.gorecipe.controller;
 
 import com.cis.gorecipe.BaseTest;
+import com.cis.gorecipe.exception.SpoonacularUnavailableException;
 import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.model.RestrictionType;
+import com.cis.gorecipe.model.User;
+import com.cis.gorecipe.service.RecipeSearchService;
+import com.fasterxml.jackson.core.type.TypeReference;
 import org.hamcrest.MatcherAssert;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import java.time.Instant;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 class RecipeControllerTest extends BaseTest {
@@ -28,6 +49,9 @@ class RecipeControllerTest extends BaseTest {
     @Autowired
     RecipeController controller;
 
+    @Autowired
+    RecipeSearchService recipeSearchService;
+
     /**
      * Test whether a valid recipe can be added
      */
@@ -70,6 +94,37 @@ class RecipeControllerTest extends BaseTest {
                 .andExpect(status().isNoContent());
 
         assertFalse(recipeRepository.existsById(mockRecipe.getId()));
+
+        /* cached search results can't keep handing out the deleted recipe's ID */
+        verify(spoonacularService).clearCache();
+    }
+
+    /**
+     * Test whether a recipe is served from the second-level cache once it has been read, and stops being served
+     * once it has been deleted
+     */
+    @DirtiesContext
+    @Test
+    public void testGetRecipeIsCachedUntilDeleted() throws Exception {
+
+        Recipe recipe = recipeRepository.save(new Recipe().setName("Tomato Sauce")
+                .setVerboseIngredients(Arrays.asList("1 can tomatoes", "1 clove garlic")));
+
+        String path = "/api/recipes/" + recipe.getId();
+
+        mockMvc.perform(get(path)).andExpect(status().isOk());
+
+        String result = mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertEquals(2, serializer.readValue(result, Recipe.class).getVerboseIngredients().size());
+        assertEquals(0, countStatements(() -> mockMvc.perform(get(path)).andExpect(status().isOk())));
+
+        mockMvc.perform(delete(path)).andExpect(status().isNoContent());
+        mockMvc.perform(get(path)).andExpect(status().isNotFound());
     }
 
     /**
@@ -151,20 +206,240 @@ class RecipeControllerTest extends BaseTest {
         MatcherAssert.assertThat(actual, is(Arrays.asList(recipes)));
     }
 
+    /**
+     * Test whether /all can be walked a page at a time by following the cursor header
+     */
+    @DirtiesContext
+    @Test
+    public void testGetAllRecipesPaginated() throws Exception {
+
+        for (String name : Arrays.asList("Egg Salad", "Grilled Cheese", "Fried Rice", "Tomato Soup", "Corn Bread"))
+            recipeRepository.save(new Recipe().setName(name).setInstructions("Cook it."));
+
+        MvcResult first = mockMvc.perform(get("/api/recipes/all").param("size", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(RecipeController.NEXT_CURSOR_HEADER))
+                .andReturn();
+
+        List<Recipe> page = Arrays.asList(serializer.readValue(first.getResponse().getContentAsString(), Recipe[].class));
+        assertEquals(2, page.size());
+        assertEquals("Egg Salad", page.get(0).getName());
+
+        /* summaries leave out the instructions */
+        assertEquals(null, page.get(0).getInstructions());
+
+        String cursor = first.getResponse().getHeader(RecipeController.NEXT_CURSOR_HEADER);
+
+        MvcResult second = mockMvc.perform(get("/api/recipes/all")
+                        .param("after", cursor)
+                        .param("size", "3")
+                        .param("detail", "true"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(RecipeController.NEXT_CURSOR_HEADER))
+                .andReturn();
+
+        page = Arrays.asList(serializer.readValue(second.getResponse().getContentAsString(), Recipe[].class));
+        assertEquals(3, page.size());
+        assertEquals("Fried Rice", page.get(0).getName());
+        assertEquals("Cook it.", page.get(0).getInstructions());
+    }
+
+    /**
+     * Test whether a page of full recipes is read with a fixed number of queries, however many recipes it holds
+     */
+    @DirtiesContext
+    @Test
+    public void testGetAllRecipesHasNoNPlusOneQueries() throws Exception {
+
+        for (int i = 0; i < 20; i++)
+            recipeRepository.save(new Recipe().setName("Recipe " + i)
+                    .setVerboseIngredients(Arrays.asList("1 cup flour", "2 eggs")));
+
+        long statements = countStatements(() -> mockMvc.perform(get("/api/recipes/all")
+                        .param("size", "20")
+                        .param("detail", "true"))
+                .andExpect(status().isOk()));
+
+        /* one query for the page of IDs and one for the recipes and their verbose ingredients */
+        assertTrue(statements <= 2, statements + " statements");
+    }
+
+    /**
+     * Test whether recipes are classified by dietary restriction as they are added, and whether a user's
+     * restrictions filter the recipes they are listed
+     */
+    @DirtiesContext
+    @Test
+    public void testGetAllRecipesFiltersByDietaryRestrictions() throws Exception {
+
+        User user = userRepository.save(new User().setUsername("vegan")
+                .setEmail("vegan@temple.edu")
+                .setFirstName("Vera")
+                .setLastName("Green")
+                .setBirthDate(new Date(946702800000L))
+                .setPassword("password")
+                .setDietaryRestrictions(new HashSet<>(Collections.singletonList("vegan"))));
+
+        for (Recipe recipe : Arrays.asList(new Recipe().setName("Lentil Stew").setDiets("vegan, gluten free"),
+                new Recipe().setName("Beef Stew").setDiets("gluten free")))
+            mockMvc.perform(post("/api/recipes/")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(serializer.writeValueAsString(recipe)))
+                    .andExpect(status().isOk());
+
+        /* there is no disallowed ingredient data, so only what its diets imply is vouched for */
+        assertEquals(RestrictionType.GLUTEN.getBit() | RestrictionType.WHEAT.getBit(),
+                recipeRepository.findAll().stream()
+                        .filter(r -> r.getName().equals("Beef Stew"))
+                        .findFirst()
+                        .orElseThrow()
+                        .getCompatibility());
+
+        for (String detail : Arrays.asList("false", "true")) {
+            String result = mockMvc.perform(get("/api/recipes/all")
+                            .param("detail", detail)
+                            .param("userId", user.getId().toString()))
+                    .andExpect(status().isOk())
+                    .andReturn()
+                    .getResponse()
+                    .getContentAsString();
+
+            List<Map<String, Object>> page = serializer.readValue(result, new TypeReference<>() {
+            });
+
+            assertEquals(1, page.size());
+            assertEquals("Lentil Stew", page.get(0).get("name"));
+        }
+
+        mockMvc.perform(get("/api/recipes/all").param("userId", "999"))
+                .andExpect(status().isNotFound());
+    }
+
+    /**
+     * Test whether a restriction we have no data for (no diet implies it and no disallowed ingredients are stored)
+     * is left out of filtering instead of hiding every recipe, while the user's other restrictions still apply
+     */
+    @DirtiesContext
+    @Test
+    public void testRestrictionsWithoutDataAreNotFiltered() throws Exception {
+
+        User peanut = userRepository.save(new User().setUsername("peanut")
+                .setEmail("peanut@temple.edu")
+                .setFirstName("Pat")
+                .setLastName("Nutt")
+                .setBirthDate(new Date(946702800000L))
+                .setPassword("password")
+                .setDietaryRestrictions(new HashSet<>(Collections.singletonList("peanut"))));
+
+        User veganPeanut = userRepository.save(new User().setUsername("veganpeanut")
+                .setEmail("veganpeanut@temple.edu")
+                .setFirstName("Vic")
+                .setLastName("Nutt")
+                .setBirthDate(new Date(946702800000L))
+                .setPassword("password")
+                .setDietaryRestrictions(new HashSet<>(Arrays.asList("peanut", "vegan"))));
+
+        for (Recipe recipe : Arrays.asList(new Recipe().setName("Lentil Stew").setDiets("vegan, gluten free"),
+                new Recipe().setName("Beef Stew").setDiets("gluten free")))
+            mockMvc.perform(post("/api/recipes/")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(serializer.writeValueAsString(recipe)))
+                    .andExpect(status().isOk());
+
+        assertEquals(2, recipeNames(get("/api/recipes/all").param("userId", peanut.getId().toString())).size());
+        assertEquals(Collections.singletonList("Lentil Stew"),
+                recipeNames(get("/api/recipes/all").param("userId", veganPeanut.getId().toString())));
+
+        /* recommendations filter the same way, here from the database since the Spoonacular API is down */
+        when(spoonacularService.recommendAsync(any()))
+                .thenReturn(CompletableFuture.failedFuture(new SpoonacularUnavailableException("circuit open")));
+
+        MvcResult pending = mockMvc.perform(get("/api/recipes/recommend/" + peanut.getId()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String result = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertEquals(2, serializer.readValue(result, Recipe[].class).length);
+    }
+
+    private List<Object> recipeNames(MockHttpServletRequestBuilder request) throws Exception {
+
+        String result = mockMvc.perform(request)
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<Map<String, Object>> page = serializer.readValue(result, new TypeReference<>() {
+        });
+
+        return page.stream().map(r -> r.get("name")).collect(Collectors.toList());
+    }
+
+    /**
+     * Test whether the catalog is exported as one JSON recipe per line, and whether updatedSince filters it
+     */
+    @DirtiesContext
+    @Test
+    public void testExportRecipes() throws Exception {
+
+        recipeRepository.save(new Recipe().setName("Egg Salad"));
+        recipeRepository.save(new Recipe().setName("Fried Rice"));
+
+        MvcResult pending = mockMvc.perform(get("/api/recipes/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String result = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        String[] lines = result.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("Egg Salad", serializer.readValue(lines[0], Recipe.class).getName());
+        assertEquals("Fried Rice", serializer.readValue(lines[1], Recipe.class).getName());
+
+        pending = mockMvc.perform(get("/api/recipes/export")
+                        .param("updatedSince", Instant.now().plusSeconds(3600).toString()))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        result = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertTrue(result.isEmpty());
+    }
+
     /**
      * Test whether a subset of recipes can be returned based on a search query
      */
     @Test
     public void testSearchRecipes() throws Exception {
 
-        when(spoonacularService.search(any()))
-                .thenReturn(Arrays.asList(new Recipe().setName("corn").setSpoonacularId(1L),
-                                          new Recipe().setName("tomato").setSpoonacularId(2L)));
+        when(spoonacularService.searchAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(
+                        Arrays.asList(new Recipe().setName("corn").setSpoonacularId(1L),
+                                      new Recipe().setName("tomato").setSpoonacularId(2L))));
 
-        String result = mockMvc.perform(get("/api/recipes/search")
+        MvcResult pending = mockMvc.perform(get("/api/recipes/search")
                 .param("query", "soup")
                 .param("intolerances", "egg")
                 .param("diet", "vegan"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String result = mockMvc.perform(asyncDispatch(pending))
                 .andExpect(status().isOk())
                 .andReturn()
                 .getResponse()
@@ -174,4 +449,161 @@ class RecipeControllerTest extends BaseTest {
 
         assertEquals(actual.size(), 2);
     }
+
+    /**
+     * Test whether searches are answered from the database, and marked as degraded, when the Spoonacular API is
+     * unavailable
+     */
+    @DirtiesContext
+    @Test
+    public void testSearchRecipesFallsBackToDatabase() throws Exception {
+
+        recipeRepository.save(new Recipe().setName("Tomato Soup"));
+        recipeRepository.save(new Recipe().setName("Corn Bread"));
+
+        when(spoonacularService.searchAsync(any()))
+                .thenReturn(CompletableFuture.failedFuture(new SpoonacularUnavailableException("circuit open")));
+
+        MvcResult pending = mockMvc.perform(get("/api/recipes/search")
+                        .param("query", "soup"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String result = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().string(RecipeController.DEGRADED_HEADER, "spoonacular-unavailable"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<Recipe> actual = Arrays.asList(serializer.readValue(result, Recipe[].class));
+
+        assertEquals(1, actual.size());
+        assertEquals("Tomato Soup", actual.get(0).getName());
+    }
+
+    /**
+     * Test whether a search that enough stored recipes match is answered from the local index without asking the
+     * Spoonacular API, ranked and filtered by preparation time, and whether a search that they only partly match
+     * still goes to the Spoonacular API
+     */
+    @DirtiesContext
+    @Test
+    public void testSearchRecipesAnsweredLocally() throws Exception {
+
+        for (int i = 0; i < 12; i++) {
+            Recipe recipe = new Recipe()
+                    .setName(i == 0 ? "Tomato Soup" : "Tomato Soup Number " + i)
+                    .setInstructions("Simmer until done.")
+                    .setPrepTime(i == 11 ? 90 : 30);
+
+            mockMvc.perform(post("/api/recipes/")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(serializer.writeValueAsString(recipe)))
+                    .andExpect(status().isOk());
+        }
+
+        for (int i = 0; i < 100 && !recipeSearchService.isReady(); i++)
+            Thread.sleep(50);
+
+        MvcResult pending = mockMvc.perform(get("/api/recipes/search")
+                        .param("query", "tomato soups")
+                        .param("maxPrepTime", "60"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String result = mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().string(RecipeController.SOURCE_HEADER, "local"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        List<Recipe> actual = Arrays.asList(serializer.readValue(result, Recipe[].class));
+
+        assertEquals(11, actual.size());
+        assertEquals("Tomato Soup", actual.get(0).getName());
+        verify(spoonacularService, never()).searchAsync(any());
+
+        /* every stored recipe matches "tomato", but none of them matches "lentil" */
+        when(spoonacularService.searchAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+
+        pending = mockMvc.perform(get("/api/recipes/search")
+                        .param("query", "tomato lentil soup"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(RecipeController.SOURCE_HEADER));
+
+        verify(spoonacularService).searchAsync(any());
+    }
+
+    /**
+     * Test whether the explore page answers 503 straight away, rather than waiting, while the first snapshot is
+     * still being built
+     */
+    @DirtiesContext
+    @Test
+    public void testExplorePageOnColdStart() throws Exception {
+
+        /* the Spoonacular API never answers, so the first build keeps running */
+        when(spoonacularService.searchAsync(any())).thenReturn(new CompletableFuture<>());
+
+        mockMvc.perform(get("/api/recipes/explore"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+
+        mockMvc.perform(get("/api/recipes/explore"))
+                .andExpect(status().isServiceUnavailable());
+
+        /* both requests share the one build */
+        verify(spoonacularService, times(4)).searchAsync(any());
+    }
+
+    /**
+     * Test whether the explore page snapshot is still built when one of its categories fails
+     */
+    @DirtiesContext
+    @Test
+    public void testExplorePageWithFailedCategory() throws Exception {
+
+        when(spoonacularService.searchAsync(any())).thenAnswer(invocation -> {
+
+            Map<String, String> parameters = invocation.getArgument(0);
+            String category = parameters.get("type") != null ? parameters.get("type") : parameters.get("diet");
+
+            if (category.equals("dessert"))
+                return CompletableFuture.failedFuture(new Exception("Request to Spoonacular API failed!"));
+
+            return CompletableFuture.completedFuture(Collections.singletonList(new Recipe()
+                    .setName(category)
+                    .setSpoonacularId((long) category.hashCode())
+                    .setPrepTime(20)));
+        });
+
+        MvcResult pending = mockMvc.perform(post("/api/recipes/explore/refresh"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(pending))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("Server-Timing"));
+
+        String result = mockMvc.perform(get("/api/recipes/explore"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("Age"))
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        Map<String, List<Recipe>> actual = serializer.readValue(result, new TypeReference<>() {});
+
+        assertEquals(1, actual.get("vegan").size());
+        assertEquals(1, actual.get("dinner").size());
+        assertEquals(1, actual.get("breakfast").size());
+        assertTrue(actual.get("dessert").isEmpty());
+    }
 }
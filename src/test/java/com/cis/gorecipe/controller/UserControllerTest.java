@@ -3,7 +3,10 @@ package com.cis.gorecipe.controller;
 import com.cis.gorecipe.BaseTest;
 import com.cis.gorecipe.dto.UserDTO;
 import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.model.RecipeCalendarItem;
+import com.cis.gorecipe.model.RestrictionType;
 import com.cis.gorecipe.model.User;
+import com.cis.gorecipe.repository.RecipeCalendarItemRepository;
 import org.assertj.core.api.HamcrestCondition;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
@@ -13,6 +16,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.annotation.DirtiesContext;
 
 import java.util.*;
@@ -31,6 +35,9 @@ class UserControllerTest extends BaseTest {
     @Autowired
     UserController userController;
 
+    @Autowired
+    RecipeCalendarItemRepository calendarRepository;
+
     private User[] mockUsers;
 
     @BeforeEach
@@ -318,6 +325,92 @@ class UserControllerTest extends BaseTest {
         assertEquals(recipes.size(), actual.size());
     }
 
+    /**
+     * Test whether a user's saved recipes and calendar are read with a fixed number of queries, however many
+     * recipes they hold
+     */
+    @Test
+    @DirtiesContext
+    public void testSavedRecipesAndCalendarHaveNoNPlusOneQueries() throws Exception {
+
+        List<Recipe> recipes = new ArrayList<>();
+        for (int i = 0; i < 10; i++)
+            recipes.add(new Recipe().setName("recipe" + i)
+                    .setVerboseIngredients(Arrays.asList("1 cup flour", "2 eggs")));
+
+        recipes = recipeRepository.saveAll(recipes);
+
+        User user = userRepository.save(mockUsers[4].setSavedRecipes(new HashSet<>(recipes)));
+
+        for (Recipe recipe : recipes)
+            calendarRepository.save(new RecipeCalendarItem().setUser(user).setRecipe(recipe).setDate(new Date()));
+
+        String path = "/api/users/" + user.getId();
+
+        /* one query for the page of IDs (a first page that isn't full needs no count) and one for the recipes and
+         * their verbose ingredients */
+        long statements = countStatements(() -> mockMvc.perform(get(path + "/recipes"))
+                .andExpect(status().isOk()));
+        assertTrue(statements <= 2, statements + " statements");
+
+        /* the same two for the calendar, plus a handful for the user's own collections, which every item
+         * serializes but which are only read once */
+        statements = countStatements(() -> mockMvc.perform(get(path + "/calendar"))
+                .andExpect(status().isOk()));
+        assertTrue(statements <= 6, statements + " statements");
+    }
+
+    /**
+     * Test whether saved recipes are returned a page at a time, sorted as asked, with the total in a header, and
+     * whether a user's DTO counts and links to their saved recipes rather than embedding them
+     */
+    @Test
+    @DirtiesContext
+    public void testGetSavedRecipesPaged() throws Exception {
+
+        List<Recipe> recipes = recipeRepository.saveAll(Arrays.asList(
+                new Recipe().setName("b").setPrepTime(30),
+                new Recipe().setName("c").setPrepTime(10),
+                new Recipe().setName("a").setPrepTime(20)));
+
+        User user = userRepository.save(mockUsers[4]);
+        String path = "/api/users/" + user.getId() + "/recipes";
+
+        for (Recipe recipe : recipes)
+            mockMvc.perform(post(path + "/" + recipe.getId()))
+                    .andExpect(status().isOk());
+
+        MockHttpServletResponse response = mockMvc.perform(get(path)
+                        .param("sort", "name")
+                        .param("size", "2"))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse();
+
+        assertEquals("3", response.getHeader(UserController.TOTAL_COUNT_HEADER));
+        List<Recipe> page = Arrays.asList(serializer.readValue(response.getContentAsString(), Recipe[].class));
+        assertEquals(Arrays.asList("a", "b"), page.stream().map(Recipe::getName).collect(Collectors.toList()));
+
+        page = savedRecipes(path + "?sort=name&size=2&page=1");
+        assertEquals(Collections.singletonList("c"), page.stream().map(Recipe::getName).collect(Collectors.toList()));
+
+        page = savedRecipes(path + "?sort=prepTime&direction=desc");
+        assertEquals(Arrays.asList("b", "a", "c"), page.stream().map(Recipe::getName).collect(Collectors.toList()));
+
+        mockMvc.perform(get(path).param("sort", "password"))
+                .andExpect(status().isBadRequest());
+
+        UserDTO userDTO = serializer.readValue(mockMvc.perform(get("/api/users/" + user.getId()))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString(), UserDTO.class);
+
+        assertEquals(3, userDTO.getSavedRecipeCount());
+        assertEquals(path, userDTO.getSavedRecipesLink());
+        assertNull(userDTO.getSavedRecipes());
+    }
+
     /**
      * Test whether the API will reject an attempt to retrieve recipes from an account that does not exist
      */
@@ -378,6 +471,69 @@ class UserControllerTest extends BaseTest {
                 .andExpect(status().isNotFound());
     }
 
+    /**
+     * Test whether saving and removing recipes writes the join rows without loading the user, is idempotent, and
+     * shows up in the saved recipes straight away, one recipe at a time and in bulk
+     */
+    @Test
+    @DirtiesContext
+    public void testSaveAndRemoveRecipesWithoutLoadingUser() throws Exception {
+
+        List<Recipe> recipes = recipeRepository.saveAll(Arrays.asList(
+                new Recipe().setName("recipe1"),
+                new Recipe().setName("recipe2"),
+                new Recipe().setName("recipe3")));
+
+        User user = userRepository.save(mockUsers[4]);
+        String path = "/api/users/" + user.getId() + "/recipes";
+
+        /* two existence checks and one insert, however many recipes the user has saved */
+        for (int i = 0; i < 2; i++)
+            assertEquals(3, countStatements(() -> mockMvc.perform(post(path + "/" + recipes.get(0).getId()))
+                    .andExpect(status().isOk())));
+
+        assertEquals(1, savedRecipes(path).size());
+
+        mockMvc.perform(post(path)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(serializer.writeValueAsString(recipes.stream()
+                                .map(Recipe::getId)
+                                .collect(Collectors.toList()))))
+                .andExpect(status().isOk());
+
+        assertEquals(3, savedRecipes(path).size());
+
+        mockMvc.perform(post(path)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[" + recipes.get(1).getId() + ", 99999]"))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(delete(path + "/" + recipes.get(0).getId()))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(delete(path)
+                        .param("ids", recipes.get(1).getId() + "," + recipes.get(0).getId()))
+                .andExpect(status().isOk());
+
+        List<Recipe> saved = savedRecipes(path);
+        assertEquals(1, saved.size());
+        assertEquals("recipe3", saved.get(0).getName());
+
+        mockMvc.perform(delete("/api/users/42069/recipes").param("ids", "1"))
+                .andExpect(status().isNotFound());
+    }
+
+    private List<Recipe> savedRecipes(String path) throws Exception {
+
+        String result = mockMvc.perform(get(path))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        return Arrays.asList(serializer.readValue(result, Recipe[].class));
+    }
+
     /**
      * Test whether a dietary restriction can be added to an account
      */
@@ -451,6 +607,36 @@ class UserControllerTest extends BaseTest {
         assertEquals(user.getDietaryRestrictions(), restrictions);
     }
 
+    /**
+     * Test whether adding and removing a dietary restriction is a single UPDATE that doesn't load the user, and
+     * whether the user's restrictions come back by name
+     */
+    @Test
+    @DirtiesContext
+    public void testDietaryRestrictionUpdatesDoNotLoadUser() throws Exception {
+
+        User user = userRepository.save(mockUsers[0]);
+        String path = "/api/users/" + user.getId() + "/dietary-restrictions";
+
+        for (String restriction : Arrays.asList("tree nut", "vegan", "vegan"))
+            assertEquals(1, countStatements(() -> mockMvc.perform(post(path)
+                            .param("dietaryRestriction", restriction))
+                    .andExpect(status().isOk())));
+
+        assertEquals(1, countStatements(() -> mockMvc.perform(delete(path)
+                        .param("dietaryRestriction", "tree nut"))
+                .andExpect(status().isOk())));
+
+        String result = mockMvc.perform(get("/api/users/" + user.getId()))
+                .andExpect(status().isOk())
+                .andReturn()
+                .getResponse()
+                .getContentAsString();
+
+        assertEquals(Collections.singleton("vegan"), serializer.readValue(result, UserDTO.class).getDietaryRestrictions());
+        assertEquals(RestrictionType.VEGAN.getBit(), userRepository.findRestrictionMaskById(user.getId()).orElseThrow());
+    }
+
     /**
      * Test whether the API will reject an attempt to remove a dietary restriction from an account that does not exist
      */
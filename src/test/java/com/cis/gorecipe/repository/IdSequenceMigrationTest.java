@@ -0,0 +1,41 @@
+package com.cis.gorecipe.repository;
+
+import com.cis.gorecipe.BaseTest;
+import com.cis.gorecipe.model.Recipe;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdSequenceMigrationTest extends BaseTest {
+
+    @Autowired
+    IdSequenceMigration idSequenceMigration;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    /**
+     * Test whether IDs generated after the migration skip past rows that were inserted under the old sequence
+     */
+    @DirtiesContext
+    @Test
+    public void testMigrate() {
+
+        jdbc.update("insert into recipe (id, name) values (500, 'Legacy Stew')");
+
+        idSequenceMigration.migrate();
+
+        assertEquals(501L, jdbc.queryForObject("select next_val from recipe_seq", Long.class));
+
+        Recipe recipe = recipeRepository.save(new Recipe().setName("Corn Bread"));
+        assertTrue(recipe.getId() > 500);
+
+        /* running it again leaves the sequence alone */
+        idSequenceMigration.migrate();
+        assertTrue(jdbc.queryForObject("select next_val from recipe_seq", Long.class) > 501);
+    }
+}
@@ -0,0 +1,214 @@
+package com.cis.gorecipe.repository;
+
+import com.cis.gorecipe.BaseTest;
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Import(RecipeJdbcRepositoryTest.StatementCounter.class)
+class RecipeJdbcRepositoryTest extends BaseTest {
+
+    /**
+     * Wraps the DataSource so that every statement sent to the database is counted, including the ones
+     * NamedParameterJdbcTemplate sends, which Hibernate's statistics never see
+     */
+    @TestConfiguration
+    static class StatementCounter implements BeanPostProcessor {
+
+        private static final AtomicLong executed = new AtomicLong();
+
+        /**
+         * The only thread whose statements are counted, so that background work (e.g. building the search index)
+         * doesn't skew the counts
+         */
+        private static volatile Thread counted;
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            return bean instanceof DataSource ? counting(DataSource.class, bean) : bean;
+        }
+
+        /**
+         * @return a proxy of the target that counts the statements executed through it, and through the
+         * connections and statements it hands out
+         */
+        private static Object counting(Class<?> type, Object target) {
+
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+
+                if (method.getName().equals("equals"))
+                    return proxy == args[0];
+                if (method.getName().equals("hashCode"))
+                    return System.identityHashCode(proxy);
+
+                if (Statement.class.isAssignableFrom(method.getDeclaringClass())
+                        && method.getName().startsWith("execute") && Thread.currentThread() == counted)
+                    executed.incrementAndGet();
+
+                Object result;
+                try {
+                    result = method.invoke(target, args);
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+
+                Class<?> returned = method.getReturnType();
+                if (result != null && (returned == Connection.class || Statement.class.isAssignableFrom(returned)))
+                    return counting(returned, result);
+
+                return result;
+            });
+        }
+    }
+
+    @Autowired
+    RecipeJdbcRepository recipeJdbcRepository;
+
+    /**
+     * @param action an action to run
+     * @return how many statements this thread executed on the database while it ran
+     */
+    private long countExecuted(DatabaseAction action) throws Exception {
+
+        StatementCounter.executed.set(0);
+        StatementCounter.counted = Thread.currentThread();
+        try {
+            action.run();
+        } finally {
+            StatementCounter.counted = null;
+        }
+
+        return StatementCounter.executed.get();
+    }
+
+    private Recipe recipe(String name, long spoonacularId, String... ingredients) {
+
+        Recipe recipe = new Recipe()
+                .setName(name)
+                .setSpoonacularId(spoonacularId)
+                .setPrepTime(15)
+                .setInstructions("Cook it.");
+
+        for (String ingredient : ingredients) {
+            recipe.addIngredient(new Ingredient().setName(ingredient));
+            recipe.getVerboseIngredients().add("1 cup " + ingredient);
+        }
+
+        return recipe;
+    }
+
+    /**
+     * Test whether a batch of recipes is stored with its ingredients, and storing it again changes nothing
+     */
+    @DirtiesContext
+    @Test
+    public void testUpsertAll() {
+
+        ingredientRepository.save(new Ingredient().setName("tomato"));
+
+        List<Recipe> recipes = Arrays.asList(
+                recipe("Tomato Soup", 1L, "tomato", "onion"),
+                recipe("Onion Rings", 2L, "onion", "flour"));
+
+        recipeJdbcRepository.upsertAll(recipes);
+
+        assertNotNull(recipes.get(0).getId());
+        assertNotNull(recipes.get(1).getId());
+        assertEquals(2, recipeRepository.count());
+        assertEquals(3, ingredientRepository.count());
+
+        Recipe soup = recipeRepository.findRecipeBySpoonacularId(1L);
+        assertEquals(recipes.get(0).getId(), soup.getId());
+        assertEquals(Arrays.asList("onion", "tomato"), soup.getIngredients().stream()
+                .map(Ingredient::getName)
+                .sorted()
+                .collect(Collectors.toList()));
+        assertEquals(2, soup.getVerboseIngredients().size());
+
+        /* the same recipes found by another search */
+        List<Recipe> again = Arrays.asList(
+                recipe("Tomato Soup", 1L, "tomato", "onion"),
+                recipe("Onion Rings", 2L, "onion", "flour"));
+
+        recipeJdbcRepository.upsertAll(again);
+
+        assertEquals(recipes.get(0).getId(), again.get(0).getId());
+        assertEquals(recipes.get(1).getId(), again.get(1).getId());
+        assertEquals(2, recipeRepository.count());
+        assertEquals(2, recipeRepository.findRecipeBySpoonacularId(1L).getIngredients().size());
+
+        /* IDs handed out by Hibernate afterwards don't collide with the ones reserved for the batch */
+        Recipe added = recipeRepository.save(new Recipe().setName("Corn Bread"));
+        assertTrue(added.getId() > recipes.get(1).getId());
+    }
+
+    /**
+     * Test whether storing a batch takes the same number of statements however many recipes it contains
+     */
+    @DirtiesContext
+    @Test
+    public void testStatementsDontGrowWithBatchSize() throws Exception {
+
+        /* the first batch also pays for setting things up, such as loading the recipe sequence */
+        recipeJdbcRepository.upsertAll(batch(1000, 2));
+
+        long two = countExecuted(() -> recipeJdbcRepository.upsertAll(batch(2000, 2)));
+        long fifty = countExecuted(() -> recipeJdbcRepository.upsertAll(batch(3000, 50)));
+
+        assertTrue(two > 0);
+        assertEquals(two, fifty);
+        assertEquals(54, recipeRepository.count());
+    }
+
+    /**
+     * @return new recipes, each with an ingredient of its own and one they all share
+     */
+    private List<Recipe> batch(long firstSpoonacularId, int size) {
+
+        List<Recipe> recipes = new ArrayList<>();
+        for (long id = firstSpoonacularId; id < firstSpoonacularId + size; id++)
+            recipes.add(recipe("Recipe " + id, id, "ingredient " + id, "salt"));
+
+        return recipes;
+    }
+
+    /**
+     * Test whether a lookup that was cached before a recipe existed finds the recipe once it has been stored
+     */
+    @DirtiesContext
+    @Test
+    public void testUpsertAllEvictsCachedQueries() {
+
+        Recipe soup = recipe("Tomato Soup", 1L, "tomato");
+
+        recipeJdbcRepository.upsertAll(Arrays.asList(soup));
+
+        long nextId = soup.getId() + 1;
+        assertFalse(recipeRepository.findWithVerboseIngredientsById(nextId).isPresent());
+
+        Recipe rings = recipe("Onion Rings", 2L, "onion");
+
+        recipeJdbcRepository.upsertAll(Arrays.asList(rings));
+
+        assertEquals(nextId, rings.getId());
+        assertTrue(recipeRepository.findWithVerboseIngredientsById(nextId).isPresent());
+    }
+}
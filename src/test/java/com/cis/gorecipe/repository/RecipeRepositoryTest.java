@@ -0,0 +1,63 @@
+package com.cis.gorecipe.repository;
+
+import com.cis.gorecipe.BaseTest;
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import org.hibernate.LazyInitializationException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* lazy loads outside a session fail here the way they do in production */
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.enable_lazy_load_no_trans=false")
+class RecipeRepositoryTest extends BaseTest {
+
+    @Autowired
+    RecipeJdbcRepository recipeJdbcRepository;
+
+    /**
+     * Test whether recipes looked up by Spoonacular ID can be copied and serialized once their session is gone
+     */
+    @DirtiesContext
+    @Test
+    public void testFindAllBySpoonacularIdInLoadsIngredients() throws Exception {
+
+        List<Recipe> stored = Arrays.asList(
+                new Recipe().setName("Tomato Soup").setSpoonacularId(1L),
+                new Recipe().setName("Onion Rings").setSpoonacularId(2L));
+
+        for (Recipe recipe : stored)
+            for (String ingredient : Arrays.asList("onion", recipe.getSpoonacularId() == 1L ? "tomato" : "flour")) {
+                recipe.addIngredient(new Ingredient().setName(ingredient));
+                recipe.getVerboseIngredients().add("1 cup " + ingredient);
+            }
+
+        recipeJdbcRepository.upsertAll(stored);
+
+        /* without the lookup below, the ingredients can't be read outside the session */
+        assertThrows(LazyInitializationException.class,
+                () -> recipeRepository.findRecipeBySpoonacularId(1L).getIngredients().size());
+
+        List<Recipe> recipes = recipeRepository.findAllBySpoonacularIdIn(Arrays.asList(1L, 2L, 3L));
+        recipes.sort(Comparator.comparing(Recipe::getSpoonacularId));
+
+        assertEquals(2, recipes.size());
+        assertEquals(Arrays.asList("onion", "tomato"), recipes.get(0).getIngredients().stream()
+                .map(Ingredient::getName)
+                .sorted()
+                .collect(Collectors.toList()));
+        assertEquals(2, recipes.get(1).getVerboseIngredients().size());
+
+        Recipe copy = recipes.get(0).copy();
+        assertEquals(2, copy.getIngredients().size());
+        assertTrue(serializer.writeValueAsString(recipes).contains("1 cup flour"));
+    }
+}
@@ -0,0 +1,115 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.dto.ExploreSnapshot;
+import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.repository.RecipeRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class ExploreServiceImplTest {
+
+    private final RecipeRepository recipeRepository = mock(RecipeRepository.class);
+
+    private final SpoonacularService spoonacularService = mock(SpoonacularService.class);
+
+    private final RecipeIngestService recipeIngestService = mock(RecipeIngestService.class);
+
+    private final ExploreServiceImpl exploreService = new ExploreServiceImpl(recipeRepository, spoonacularService,
+            recipeIngestService, 1000, 30);
+
+    /**
+     * Test whether a cold start answers with no snapshot straight away while the first build runs in the
+     * background, and whether a build that failed is started again by the next request
+     */
+    @Test
+    void testColdStart() throws InterruptedException {
+
+        when(spoonacularService.searchAsync(any())).thenReturn(CompletableFuture.completedFuture(new ArrayList<>()));
+        when(recipeIngestService.saveRecipes(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        /* the quick recipes are read from the database, which is down */
+        when(recipeRepository.findMinId()).thenThrow(new IllegalStateException("database unavailable"));
+
+        assertEquals(Optional.empty(), exploreService.getSnapshot());
+        verify(recipeRepository, timeout(1000)).findMinId();
+
+        doReturn(null).when(recipeRepository).findMinId();
+
+        assertEquals(Optional.empty(), exploreService.getSnapshot());
+
+        /* requests while the build is running join it rather than starting another */
+        Optional<ExploreSnapshot> snapshot = exploreService.getSnapshot();
+        for (int i = 0; i < 100 && snapshot.isEmpty(); i++) {
+            Thread.sleep(10);
+            snapshot = exploreService.getSnapshot();
+        }
+
+        assertTrue(snapshot.isPresent());
+        assertEquals(5, snapshot.get().getCategories().size());
+
+        /* from now on the snapshot is served without building another */
+        assertSame(snapshot.get(), exploreService.getSnapshot().orElseThrow());
+        verify(recipeRepository, times(2)).findMinId();
+    }
+
+    /**
+     * Test whether the quick recipes are a run of consecutive quick recipes starting at a random ID, which wraps
+     * around to the start of the table when the run reaches its end
+     */
+    @Test
+    void testQuickRecipesSampleAndWrapAround() {
+
+        /* 12 of the 100 recipes are quick, and 10 are shown */
+        List<Long> quick = List.of(3L, 11L, 20L, 28L, 35L, 47L, 52L, 66L, 70L, 81L, 89L, 97L);
+
+        when(spoonacularService.searchAsync(any())).thenReturn(CompletableFuture.completedFuture(new ArrayList<>()));
+        when(recipeIngestService.saveRecipes(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(recipeRepository.findMinId()).thenReturn(1L);
+        when(recipeRepository.findMaxId()).thenReturn(100L);
+        when(recipeRepository.findQuickIdsFrom(anyInt(), anyLong(), any())).thenAnswer(invocation -> {
+            long fromId = invocation.getArgument(1);
+            Pageable page = invocation.getArgument(2);
+            return quick.stream().filter(id -> id >= fromId).limit(page.getPageSize()).collect(Collectors.toList());
+        });
+        when(recipeRepository.findAllInOrder(any())).thenAnswer(invocation -> {
+            List<Long> ids = invocation.getArgument(0);
+            return ids.stream().map(id -> new Recipe().setId(id)).collect(Collectors.toList());
+        });
+
+        Set<Long> firsts = new HashSet<>();
+        boolean wrapped = false;
+
+        for (int i = 0; i < 50; i++) {
+            List<Long> shown = exploreService.refresh().join().getCategories().get("quick").stream()
+                    .map(Recipe::getId)
+                    .collect(Collectors.toList());
+
+            assertEquals(10, shown.size());
+
+            /* consecutive quick recipes, in ID order apart from at most one wrap around */
+            int start = quick.indexOf(shown.get(0));
+            for (int j = 0; j < shown.size(); j++)
+                assertEquals(quick.get((start + j) % quick.size()), shown.get(j));
+
+            firsts.add(shown.get(0));
+            wrapped |= shown.get(0) > shown.get(shown.size() - 1);
+        }
+
+        assertTrue(firsts.size() > 1);
+        assertTrue(wrapped);
+    }
+}
@@ -0,0 +1,114 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.BaseTest;
+import com.cis.gorecipe.model.DietaryRestriction;
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import com.cis.gorecipe.model.RestrictionType;
+import com.cis.gorecipe.repository.DietaryRestrictionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecipeClassificationServiceTest extends BaseTest {
+
+    @Autowired
+    RecipeClassificationServiceImpl recipeClassificationService;
+
+    @Autowired
+    DietaryRestrictionRepository dietaryRestrictionRepository;
+
+    @Autowired
+    JdbcTemplate jdbcTemplate;
+
+    /**
+     * Test whether recipes that were stored without being classified are classified by the backfill
+     */
+    @DirtiesContext
+    @Test
+    public void testBackfill() throws Exception {
+
+        /* saved straight through the repository, so nothing classifies them */
+        Recipe stew = recipeRepository.save(new Recipe().setName("Lentil Stew").setDiets("vegan, gluten free"));
+        Recipe steak = recipeRepository.save(new Recipe().setName("Steak"));
+
+        assertNull(compatibility(stew));
+        assertNull(compatibility(steak));
+
+        recipeClassificationService.backfill();
+
+        awaitCompatibility(stew, mask -> (mask & RestrictionType.VEGAN.getBit()) != 0);
+        awaitCompatibility(steak, mask -> true);
+
+        assertEquals(0, compatibility(steak) & RestrictionType.VEGAN.getBit());
+    }
+
+    /**
+     * Test whether every recipe is classified again when a dietary restriction is added or its disallowed
+     * ingredients change
+     */
+    @DirtiesContext
+    @Test
+    public void testReclassifiedWhenRestrictionChanges() throws Exception {
+
+        List<Ingredient> ingredients = ingredientRepository.saveAll(Arrays.asList(
+                new Ingredient().setName("peanuts"),
+                new Ingredient().setName("rice"),
+                new Ingredient().setName("chicken")));
+
+        Recipe satay = new Recipe().setName("Chicken Satay");
+        satay.setIngredients(new ArrayList<>(List.of(ingredients.get(0), ingredients.get(2))));
+        Recipe pilaf = new Recipe().setName("Rice Pilaf");
+        pilaf.setIngredients(new ArrayList<>(List.of(ingredients.get(1))));
+
+        recipeClassificationService.classify(List.of(satay, pilaf));
+        satay = recipeRepository.save(satay);
+        pilaf = recipeRepository.save(pilaf);
+
+        /* with no data for peanut, no recipe is vouched for */
+        assertEquals(0, compatibility(satay) & RestrictionType.PEANUT.getBit());
+        assertEquals(0, compatibility(pilaf) & RestrictionType.PEANUT.getBit());
+
+        DietaryRestriction peanut = dietaryRestrictionRepository.save(new DietaryRestriction()
+                .setName("peanut")
+                .setDisallowedIngredients(new ArrayList<>(List.of(ingredients.get(0)))));
+
+        awaitCompatibility(pilaf, mask -> (mask & RestrictionType.PEANUT.getBit()) != 0);
+        assertEquals(0, compatibility(satay) & RestrictionType.PEANUT.getBit());
+
+        /* a change to the disallowed ingredients alone is enough */
+        dietaryRestrictionRepository.save(peanut.setDisallowedIngredients(
+                new ArrayList<>(List.of(ingredients.get(0), ingredients.get(1)))));
+
+        awaitCompatibility(pilaf, mask -> (mask & RestrictionType.PEANUT.getBit()) == 0);
+    }
+
+    private Integer compatibility(Recipe recipe) {
+        return jdbcTemplate.queryForObject("select compatibility from recipe where id = ?", Integer.class,
+                recipe.getId());
+    }
+
+    /**
+     * Wait up to five seconds for the background classifier to store a mask the condition accepts
+     */
+    private void awaitCompatibility(Recipe recipe, IntPredicate condition) throws InterruptedException {
+
+        for (int i = 0; i < 100; i++) {
+            Integer mask = compatibility(recipe);
+            if (mask != null && condition.test(mask))
+                return;
+
+            Thread.sleep(50);
+        }
+
+        fail("compatibility of " + recipe.getName() + " is still " + compatibility(recipe));
+    }
+}
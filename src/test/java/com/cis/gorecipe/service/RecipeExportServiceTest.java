@@ -0,0 +1,55 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.BaseTest;
+import com.cis.gorecipe.model.Recipe;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* clear the persistence context every couple of recipes, so that a small catalog goes through many clears */
+@TestPropertySource(properties = "recipes.export.clear-every=2")
+class RecipeExportServiceTest extends BaseTest {
+
+    @Autowired
+    RecipeExportService recipeExportService;
+
+    /**
+     * Test whether every recipe is exported once, in order and with its verbose ingredients, across clears of the
+     * persistence context
+     */
+    @DirtiesContext
+    @Test
+    public void testExportClearsAsItGoes() throws Exception {
+
+        List<Recipe> recipes = new ArrayList<>();
+        for (int i = 0; i < 7; i++)
+            recipes.add(new Recipe().setName("Recipe " + i).setVerboseIngredients(List.of(i + " cups flour")));
+
+        recipeRepository.saveAll(recipes);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(7, recipeExportService.exportRecipes(null, out));
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(7, lines.length);
+
+        for (int i = 0; i < 7; i++) {
+            Recipe exported = serializer.readValue(lines[i], Recipe.class);
+            assertEquals("Recipe " + i, exported.getName());
+            assertEquals(List.of(i + " cups flour"), exported.getVerboseIngredients());
+        }
+
+        out.reset();
+        assertEquals(0, recipeExportService.exportRecipes(Instant.now().plusSeconds(3600), out));
+        assertEquals(0, out.size());
+    }
+}
@@ -0,0 +1,85 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.BaseTest;
+import com.cis.gorecipe.model.Recipe;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/* the background flush is pushed out of the way so the test decides when recipes are persisted, and the queue only
+ * holds two recipes */
+@TestPropertySource(properties = {"recipes.write-behind.enabled=true",
+        "recipes.write-behind.flush-interval-ms=86400000", "recipes.write-behind.queue-capacity=2"})
+class RecipeIngestServiceTest extends BaseTest {
+
+    @Autowired
+    RecipeIngestService recipeIngestService;
+
+    /**
+     * Test whether write-behind mode returns recipes with provisional IDs straight away, writes each Spoonacular
+     * recipe once, and persists them on flush
+     */
+    @DirtiesContext
+    @Test
+    public void testWriteBehind() {
+
+        Recipe soup = new Recipe().setName("Tomato Soup").setSpoonacularId(1L);
+        Recipe bread = new Recipe().setName("Corn Bread").setSpoonacularId(2L);
+
+        /* the same recipe found by a second search is coalesced with the queued one */
+        Recipe soupAgain = new Recipe().setName("Tomato Soup").setSpoonacularId(1L);
+
+        List<Recipe> first = recipeIngestService.saveRecipes(Arrays.asList(soup, bread));
+        List<Recipe> second = recipeIngestService.saveRecipes(List.of(soupAgain));
+
+        assertTrue(first.get(0).getId() < 0);
+        assertTrue(first.get(1).getId() < 0);
+        assertEquals(first.get(0).getId(), second.get(0).getId());
+        assertEquals(0, recipeRepository.count());
+        assertEquals("Tomato Soup", recipeIngestService.findProvisional(soup.getId()).getName());
+
+        long provisionalId = soup.getId();
+        recipeIngestService.flush();
+
+        assertEquals(2, recipeRepository.count());
+        assertTrue(recipeRepository.existsBySpoonacularId(1L));
+        assertTrue(soup.getId() > 0);
+
+        /* the coalesced copy and the provisional lookup both end up with the real ID */
+        assertEquals(soup.getId(), soupAgain.getId());
+        assertTrue(soupAgain.getId() > 0);
+        assertEquals(soup.getId(), recipeIngestService.findProvisional(provisionalId).getId());
+    }
+
+    /**
+     * Test whether recipes that don't fit in a full queue are persisted straight away instead of being lost
+     */
+    @DirtiesContext
+    @Test
+    public void testWriteThroughWhenQueueFull() {
+
+        Recipe soup = new Recipe().setName("Tomato Soup").setSpoonacularId(1L);
+        Recipe bread = new Recipe().setName("Corn Bread").setSpoonacularId(2L);
+        Recipe salad = new Recipe().setName("Greek Salad").setSpoonacularId(3L);
+
+        recipeIngestService.saveRecipes(Arrays.asList(soup, bread, salad));
+
+        assertTrue(soup.getId() < 0);
+        assertTrue(bread.getId() < 0);
+        assertTrue(salad.getId() > 0);
+        assertEquals(1, recipeRepository.count());
+        assertTrue(recipeRepository.existsBySpoonacularId(3L));
+
+        recipeIngestService.flush();
+
+        assertEquals(3, recipeRepository.count());
+        assertTrue(soup.getId() > 0);
+        assertTrue(bread.getId() > 0);
+    }
+}
@@ -0,0 +1,92 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.BaseTest;
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RecipeIngestStressTest extends BaseTest {
+
+    private static final int RECIPES = 30;
+
+    private static final int THREADS = 8;
+
+    private static final int BATCHES_PER_THREAD = 20;
+
+    @Autowired
+    RecipeIngestService recipeIngestService;
+
+    /**
+     * @param first the index of the first recipe in the batch
+     * @param size  how many recipes the batch holds (wrapping around the pool of recipes)
+     * @return fresh copies of the recipes, like a new search would produce, which all share some ingredients
+     */
+    private List<Recipe> batch(int first, int size) {
+
+        List<Recipe> batch = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            int n = (first + i) % RECIPES;
+
+            batch.add(new Recipe()
+                    .setName("Recipe " + n)
+                    .setSpoonacularId(1000L + n)
+                    .setInstructions("Step " + n)
+                    .addIngredient(new Ingredient().setName("salt"))
+                    .addIngredient(new Ingredient().setName("ingredient " + (n % 7))));
+        }
+
+        return batch;
+    }
+
+    /**
+     * Test whether overlapping batches saved from many threads at once all succeed, and leave exactly one row
+     * (with one set of ingredients) per recipe
+     */
+    @DirtiesContext
+    @Test
+    public void testConcurrentOverlappingBatches() throws Exception {
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+
+            results.add(pool.submit(() -> {
+                start.await();
+
+                for (int b = 0; b < BATCHES_PER_THREAD; b++) {
+                    List<Recipe> saved = recipeIngestService.saveRecipes(batch(thread * 3 + b, 10));
+
+                    assertEquals(10, saved.size());
+                    saved.forEach(r -> assertNotNull(r.getId()));
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+
+        for (Future<?> result : results)
+            result.get(2, TimeUnit.MINUTES);
+
+        pool.shutdown();
+
+        assertEquals(RECIPES, recipeRepository.count());
+        assertEquals(8, ingredientRepository.count());
+
+        for (int n = 0; n < RECIPES; n++)
+            assertEquals(2, recipeRepository.findRecipeBySpoonacularId(1000L + n).getIngredients().size());
+    }
+}
@@ -0,0 +1,101 @@
+package com.cis.gorecipe.service;
+
+import com.cis.gorecipe.exception.SpoonacularQuotaExceededException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpoonacularRateLimiterTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private SpoonacularRateLimiter limiter;
+
+    @AfterEach
+    void tearDown() {
+        if (limiter != null)
+            limiter.shutdown();
+    }
+
+    private SpoonacularRateLimiter limiter(double perSecond, double perDay, long maxWaitMillis, int maxQueued) {
+        limiter = new SpoonacularRateLimiter(perSecond, perDay, maxWaitMillis, maxQueued, nanos::get,
+                Clock.fixed(Instant.parse("2022-04-01T12:00:00Z"), ZoneOffset.UTC));
+        return limiter;
+    }
+
+    private static void assertRejected(CompletableFuture<Void> permit) {
+        CompletionException e = assertThrows(CompletionException.class, permit::join);
+        assertTrue(e.getCause() instanceof SpoonacularQuotaExceededException);
+    }
+
+    @Test
+    void testBurstIsLimitedByPoints() {
+
+        SpoonacularRateLimiter limiter = limiter(2, 1000, 0, 10);
+
+        assertTrue(limiter.acquire(SpoonacularRateLimiter.similarPoints()).isDone());
+        assertTrue(limiter.acquire(SpoonacularRateLimiter.similarPoints()).isDone());
+
+        /* the per-second budget is spent and we may not wait at all */
+        assertRejected(limiter.acquire(SpoonacularRateLimiter.similarPoints()));
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        assertTrue(limiter.acquire(SpoonacularRateLimiter.similarPoints()).isDone());
+
+        assertEquals(3L, limiter.getMetrics().get("granted"));
+        assertEquals(1L, limiter.getMetrics().get("rejected"));
+    }
+
+    @Test
+    void testRequestsWaitForTheBucketToRefill() {
+
+        SpoonacularRateLimiter limiter = limiter(100, 1000, 1000, 1);
+
+        assertTrue(limiter.acquire(100).isDone());
+
+        /* 50 points at 100 points/s is a half second wait, so the request is still queued below */
+        CompletableFuture<Void> delayed = limiter.acquire(50);
+        assertEquals(1, limiter.getMetrics().get("queued"));
+
+        /* the queue only holds one request */
+        CompletableFuture<Void> overflow = limiter.acquire(50);
+
+        delayed.join();
+        assertRejected(overflow);
+        assertEquals(1L, limiter.getMetrics().get("delayed"));
+    }
+
+    @Test
+    void testDailyBudget() {
+
+        SpoonacularRateLimiter limiter = limiter(1000, 10, 0, 10);
+
+        /* a 20 id informationBulk request costs 10.5 points */
+        assertEquals(10.5, SpoonacularRateLimiter.informationBulkPoints(20));
+        assertRejected(limiter.acquire(SpoonacularRateLimiter.informationBulkPoints(20)));
+
+        assertTrue(limiter.acquire(SpoonacularRateLimiter.complexSearchPoints(25)).isDone());
+        assertEquals(8.75, limiter.getMetrics().get("dayRemaining"));
+    }
+
+    @Test
+    void testUpstreamRejectionPausesRequests() {
+
+        SpoonacularRateLimiter limiter = limiter(5, 1000, 0, 10);
+
+        limiter.onRateLimited();
+        assertRejected(limiter.acquire(1));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertTrue(limiter.acquire(1).isDone());
+    }
+}
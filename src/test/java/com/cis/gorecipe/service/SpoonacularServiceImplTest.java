@@ -0,0 +1,34 @@
+package com.cis.gorecipe.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SpoonacularServiceImplTest {
+
+    @Test
+    void testCanonicalKey() {
+
+        Map<String, String> first = new LinkedHashMap<>();
+        first.put("query", " Tomato Soup ");
+        first.put("diet", "Vegan");
+        first.put("cuisine", null);
+
+        Map<String, String> second = new LinkedHashMap<>();
+        second.put("diet", "vegan");
+        second.put("query", "tomato soup");
+
+        /* key order, case, surrounding whitespace and null values don't matter */
+        assertEquals("diet=vegan&query=tomato soup", SpoonacularServiceImpl.canonicalKey(first));
+        assertEquals(SpoonacularServiceImpl.canonicalKey(first), SpoonacularServiceImpl.canonicalKey(second));
+
+        second.put("maxReadyTime", "30");
+        assertNotEquals(SpoonacularServiceImpl.canonicalKey(first), SpoonacularServiceImpl.canonicalKey(second));
+
+        assertEquals("", SpoonacularServiceImpl.canonicalKey(new HashMap<>()));
+    }
+}
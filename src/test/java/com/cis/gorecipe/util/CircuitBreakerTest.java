@@ -0,0 +1,120 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final CircuitBreaker breaker = new CircuitBreaker(4, 4, 50, 100, 1000, 30000, 2,
+            e -> !(e instanceof IllegalArgumentException),
+            () -> new IllegalStateException("open"),
+            nanos::get);
+
+    private CompletableFuture<String> succeed() {
+        return breaker.execute(() -> CompletableFuture.completedFuture("ok"));
+    }
+
+    private CompletableFuture<String> fail(RuntimeException e) {
+        return breaker.execute(() -> CompletableFuture.failedFuture(e));
+    }
+
+    private static void assertRejected(CompletableFuture<String> result) {
+        CompletionException e = assertThrows(CompletionException.class, result::join);
+        assertEquals("open", e.getCause().getMessage());
+    }
+
+    @Test
+    void testOpensOnFailureRateAndProbesAfterCoolDown() {
+
+        succeed();
+        succeed();
+        fail(new RuntimeException("500"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        /* the fourth call fills the window at a 50% failure rate */
+        fail(new RuntimeException("500"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertRejected(succeed());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        succeed().join();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        succeed().join();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void testFailedProbeReopens() {
+
+        for (int i = 0; i < 4; i++)
+            fail(new RuntimeException("timeout"));
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(30));
+        fail(new RuntimeException("timeout"));
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2L, breaker.getStats().get("opened"));
+    }
+
+    @Test
+    void testSlowCallsOpenTheBreaker() {
+
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> pending = new CompletableFuture<>();
+            breaker.execute(() -> pending);
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            pending.complete("late");
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testOnlyTimedPartsCountAsSlow() {
+
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> waiting = new CompletableFuture<>();
+
+            /* a long wait before a fast attempt, e.g. on a rate limiter or a retry's backoff */
+            CompletableFuture<String> result = breaker.execute(timer ->
+                    waiting.thenCompose(v -> timer.time(() -> CompletableFuture.completedFuture("ok"))));
+
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            waiting.complete("go");
+            assertEquals("ok", result.join());
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getStats().get("slowCallRate"));
+
+        /* a slow attempt still counts */
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> pending = new CompletableFuture<>();
+            breaker.execute(timer -> timer.time(() -> pending));
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(2));
+            pending.complete("late");
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testIgnoredExceptionsAreNotRecorded() {
+
+        for (int i = 0; i < 10; i++)
+            fail(new IllegalArgumentException("quota"));
+
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0.0, breaker.getStats().get("failureRate"));
+    }
+}
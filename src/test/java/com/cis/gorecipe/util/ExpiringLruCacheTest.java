@@ -0,0 +1,97 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiringLruCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    private final ExpiringLruCache<String, String> cache = new ExpiringLruCache<>(2, 1000, nanos::get);
+
+    @Test
+    void testExpiresAfterTtl() {
+
+        cache.put("soup", "tomato");
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(999));
+        assertEquals("tomato", cache.get("soup"));
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(1));
+        assertNull(cache.get("soup"));
+        assertEquals(0, cache.size());
+
+        /* a write restarts the clock */
+        cache.put("soup", "tomato");
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        cache.put("soup", "onion");
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        assertEquals("onion", cache.get("soup"));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsed() {
+
+        cache.put("soup", "tomato");
+        cache.put("bread", "corn");
+
+        /* reading soup makes bread the least recently used */
+        assertEquals("tomato", cache.get("soup"));
+        cache.put("salad", "caesar");
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get("bread"));
+        assertEquals("tomato", cache.get("soup"));
+        assertEquals("caesar", cache.get("salad"));
+    }
+
+    @Test
+    void testExpiredEntriesAreDroppedBeforeLiveOnes() {
+
+        cache.put("soup", "tomato");
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+        cache.put("bread", "corn");
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(600));
+
+        /* soup has expired, so making room costs no live entry */
+        cache.put("salad", "caesar");
+
+        assertEquals("corn", cache.get("bread"));
+        assertEquals("caesar", cache.get("salad"));
+        assertEquals(1L, cache.getStats().get("expirations"));
+        assertEquals(0L, cache.getStats().get("evictions"));
+    }
+
+    @Test
+    void testStats() {
+
+        cache.put("soup", "tomato");
+        cache.get("soup");
+        cache.get("bread");
+        cache.put("bread", "corn");
+        cache.put("salad", "caesar");
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        cache.get("salad");
+
+        /* bread has expired too, but stays counted until it is read or room is needed */
+        assertEquals(1, cache.getStats().get("size"));
+        assertEquals(2, cache.getStats().get("maxEntries"));
+        assertEquals(1L, cache.getStats().get("hits"));
+        assertEquals(2L, cache.getStats().get("misses"));
+        assertEquals(1L, cache.getStats().get("evictions"));
+        assertEquals(1L, cache.getStats().get("expirations"));
+
+        cache.put("soup", "tomato");
+        cache.invalidate("soup");
+        assertNull(cache.get("soup"));
+
+        cache.put("soup", "tomato");
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+
+        assertThrows(IllegalArgumentException.class, () -> new ExpiringLruCache<>(0, 1000));
+    }
+}
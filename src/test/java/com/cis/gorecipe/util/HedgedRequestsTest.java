@@ -0,0 +1,74 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgedRequestsTest {
+
+    @Test
+    void testHedgeWinsWhenFirstRequestIsSlow() throws Exception {
+
+        HedgedRequests hedged = new HedgedRequests(20);
+        List<CompletableFuture<String>> sent = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<String> result = hedged.execute(() -> {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            sent.add(response);
+            return response;
+        });
+
+        /* wait for the hedge to go out, then answer it before the first request */
+        while (sent.size() < 2)
+            TimeUnit.MILLISECONDS.sleep(5);
+
+        sent.get(1).complete("hedge");
+        assertEquals("hedge", result.join());
+
+        sent.get(0).complete("first");
+
+        /* the win is counted just after the result completes */
+        for (int i = 0; i < 100 && hedged.getStats().get("won").longValue() == 0; i++)
+            TimeUnit.MILLISECONDS.sleep(5);
+
+        assertEquals(1L, hedged.getStats().get("won"));
+    }
+
+    @Test
+    void testNoHedgeWhenFirstRequestIsFast() throws Exception {
+
+        HedgedRequests hedged = new HedgedRequests(20);
+
+        assertEquals("first", hedged.execute(() -> CompletableFuture.completedFuture("first")).join());
+
+        TimeUnit.MILLISECONDS.sleep(50);
+        assertEquals(0L, hedged.getStats().get("sent"));
+    }
+
+    @Test
+    void testFailureWaitsForTheOtherCopy() throws Exception {
+
+        HedgedRequests hedged = new HedgedRequests(20);
+        List<CompletableFuture<String>> sent = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<String> result = hedged.execute(() -> {
+            CompletableFuture<String> response = new CompletableFuture<>();
+            sent.add(response);
+            return response;
+        });
+
+        while (sent.size() < 2)
+            TimeUnit.MILLISECONDS.sleep(5);
+
+        sent.get(0).completeExceptionally(new RuntimeException("503"));
+        assertFalse(result.isDone());
+
+        sent.get(1).complete("hedge");
+        assertEquals("hedge", result.join());
+    }
+}
@@ -0,0 +1,112 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how long the ingredient index takes to build and to answer "what can I cook with these" at catalog sizes
+ * we may grow into. Run with -Dbenchmark=true (and enough heap, e.g. -Xmx4g, for a million recipes)
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class IngredientIndexBenchmarkTest {
+
+    private final Logger logger = LoggerFactory.getLogger(IngredientIndexBenchmarkTest.class);
+
+    /**
+     * How many distinct ingredients the catalog uses
+     */
+    private static final int INGREDIENTS = 2000;
+
+    @Test
+    void benchmark100k() {
+        run(100_000);
+    }
+
+    @Test
+    void benchmark1m() {
+        run(1_000_000);
+    }
+
+    private void run(int recipes) {
+
+        Random random = new Random(42);
+        IngredientIndex index = new IngredientIndex();
+
+        System.gc();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+
+        for (long id = 1; id <= recipes; id++) {
+            int count = 5 + random.nextInt(10);
+            List<String> ingredients = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                ingredients.add(ingredient(random));
+
+            index.put(id, ingredients);
+        }
+
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        System.gc();
+        long heapMegabytes = (usedHeap() - heapBefore) / (1024 * 1024);
+
+        /* what a fridge might hold: a few staples and a few less common ingredients */
+        List<List<String>> pantries = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            List<String> pantry = new ArrayList<>();
+            for (int j = 0; j < 8 + random.nextInt(8); j++)
+                pantry.add(ingredient(random));
+            pantries.add(pantry);
+        }
+
+        /* warm up the JIT before timing */
+        for (int i = 0; i < 200; i++)
+            index.match(pantries.get(i % pantries.size()), 2, 25);
+
+        int runs = 500;
+        long[] exact = new long[runs];
+        long[] nearly = new long[runs];
+
+        for (int i = 0; i < runs; i++) {
+            List<String> pantry = pantries.get(i % pantries.size());
+
+            long t = System.nanoTime();
+            index.match(pantry, 0, 25);
+            exact[i] = System.nanoTime() - t;
+
+            t = System.nanoTime();
+            index.match(pantry, 3, 25);
+            nearly[i] = System.nanoTime() - t;
+        }
+
+        logger.info(String.format("%,d recipes: built in %,d ms using ~%,d MB, %s; exact match p50 %.2f ms, " +
+                        "p99 %.2f ms; up to 3 missing p50 %.2f ms, p99 %.2f ms", recipes, buildMillis, heapMegabytes,
+                index.getStats(), percentile(exact, 50), percentile(exact, 99), percentile(nearly, 50),
+                percentile(nearly, 99)));
+    }
+
+    /**
+     * @return an ingredient name, with low numbers (the staples) far more likely than high ones
+     */
+    private static String ingredient(Random random) {
+        double skew = random.nextDouble();
+        return "ingredient " + (int) (INGREDIENTS * skew * skew * skew);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double percentile(long[] nanos, int percentile) {
+        long[] sorted = Arrays.copyOf(nanos, nanos.length);
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1_000_000.0;
+    }
+}
@@ -0,0 +1,70 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IngredientIndexTest {
+
+    private static List<Long> keys(List<IngredientIndex.Match> matches) {
+        return matches.stream().map(IngredientIndex.Match::getKey).collect(Collectors.toList());
+    }
+
+    @Test
+    void testFullyCoveredRecipesComeFirst() {
+
+        IngredientIndex index = new IngredientIndex();
+        index.put(1, List.of("tomato", "basil", "mozzarella"));
+        index.put(2, List.of("tomato", "basil"));
+        index.put(3, List.of("tomato"));
+        index.put(4, List.of("flour", "egg", "milk"));
+
+        List<IngredientIndex.Match> matches = index.match(List.of("tomato", "basil"), 0, 10);
+        assertEquals(List.of(2L, 3L), keys(matches));
+        assertEquals(2, matches.get(0).getMatched());
+        assertEquals(0, matches.get(0).getMissing());
+
+        matches = index.match(List.of("tomato", "basil"), 1, 10);
+        assertEquals(List.of(2L, 3L, 1L), keys(matches));
+        assertEquals(1, matches.get(2).getMissing());
+
+        assertEquals(List.of(2L), keys(index.match(List.of("tomato", "basil"), 1, 1)));
+        assertTrue(index.match(List.of("chocolate"), 5, 10).isEmpty());
+    }
+
+    @Test
+    void testNamesAreNormalized() {
+
+        IngredientIndex index = new IngredientIndex();
+        index.put(1, List.of(" Garlic ", "OLIVE OIL", "", "garlic"));
+
+        List<IngredientIndex.Match> matches = index.match(List.of("garlic", "Olive Oil"), 0, 10);
+        assertEquals(List.of(1L), keys(matches));
+        assertEquals(2, matches.get(0).getMatched());
+        assertEquals(2, index.getStats().get("ingredients"));
+    }
+
+    @Test
+    void testReplaceAndRemove() {
+
+        IngredientIndex index = new IngredientIndex();
+        index.put(1, List.of("rice", "egg"));
+        assertFalse(index.putIfAbsent(1, List.of("rice")));
+
+        index.put(1, List.of("rice"));
+        assertEquals(1, index.size());
+        assertEquals(0, index.match(List.of("rice"), 0, 10).get(0).getMissing());
+        assertTrue(index.match(List.of("egg"), 5, 10).isEmpty());
+
+        assertTrue(index.remove(1));
+        assertFalse(index.remove(1));
+        assertEquals(0, index.size());
+        assertTrue(index.match(List.of("rice"), 0, 10).isEmpty());
+
+        assertTrue(index.putIfAbsent(1, List.of("rice")));
+        assertEquals(List.of(1L), keys(index.match(List.of("rice"), 0, 10)));
+    }
+}
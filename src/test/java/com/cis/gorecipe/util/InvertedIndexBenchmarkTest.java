@@ -0,0 +1,124 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures how long the search index takes to build and to answer queries at catalog sizes we may grow into.
+ * Run with -Dbenchmark=true (and enough heap, e.g. -Xmx4g, for a million recipes)
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class InvertedIndexBenchmarkTest {
+
+    private final Logger logger = LoggerFactory.getLogger(InvertedIndexBenchmarkTest.class);
+
+    private static final String[] INGREDIENTS = {"tomato", "onion", "garlic", "basil", "chicken", "beef", "rice",
+            "pasta", "butter", "flour", "egg", "milk", "cheese", "potato", "carrot", "pepper", "salt", "sugar",
+            "lemon", "ginger", "soy sauce", "coconut", "spinach", "mushroom", "bacon", "salmon", "shrimp", "tofu",
+            "beans", "corn"};
+
+    private static final String[] DISHES = {"soup", "salad", "stew", "curry", "pie", "bake", "stir fry", "tacos",
+            "risotto", "casserole", "sandwich", "noodles", "burger", "skillet", "roast"};
+
+    private static final String[] STEPS = {"chop", "dice", "simmer", "whisk", "saute", "bake", "roast", "season",
+            "stir", "boil", "drain", "fold", "serve", "garnish", "marinate", "grill", "blend", "knead"};
+
+    private static final String[] CUISINES = {"italian", "mexican", "chinese", "indian", "french", "thai",
+            "american", "greek", "japanese", "korean"};
+
+    @Test
+    void benchmark100k() {
+        run(100_000);
+    }
+
+    @Test
+    void benchmark1m() {
+        run(1_000_000);
+    }
+
+    private void run(int recipes) {
+
+        Random random = new Random(42);
+        InvertedIndex index = new InvertedIndex();
+
+        System.gc();
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+
+        for (long id = 1; id <= recipes; id++) {
+            String main = pick(random, INGREDIENTS);
+            InvertedIndex.Document document = new InvertedIndex.Document(id)
+                    .text(main + " " + pick(random, DISHES) + " " + id, 3)
+                    .prepTime(5 + random.nextInt(120))
+                    .tag("cuisine", pick(random, CUISINES));
+
+            document.text(main, 2);
+            for (int i = 0; i < 7; i++)
+                document.text(pick(random, INGREDIENTS), 2);
+
+            StringBuilder instructions = new StringBuilder();
+            for (int i = 0; i < 40; i++)
+                instructions.append(pick(random, STEPS)).append(' ').append(pick(random, INGREDIENTS)).append(". ");
+            document.text(instructions.toString(), 1);
+
+            index.put(document);
+        }
+
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        System.gc();
+        long heapMegabytes = (usedHeap() - heapBefore) / (1024 * 1024);
+
+        String[] queries = {"tomato soup", "chicken curry", "garlic butter pasta", "spicy beef tacos",
+                "mushroom risotto", "lemon salmon", "tofu stir fry", "potato bake"};
+        List<String> italian = List.of(InvertedIndex.tag("cuisine", "italian"));
+
+        /* warm up the JIT before timing */
+        for (int i = 0; i < 200; i++)
+            index.search(queries[i % queries.length], null, null, 25);
+
+        int runs = 500;
+        long[] plain = new long[runs];
+        long[] filtered = new long[runs];
+
+        for (int i = 0; i < runs; i++) {
+            String query = queries[i % queries.length];
+
+            long t = System.nanoTime();
+            assertEquals(25, index.search(query, null, null, 25).size());
+            plain[i] = System.nanoTime() - t;
+
+            t = System.nanoTime();
+            index.search(query, 30, List.of(italian), 25);
+            filtered[i] = System.nanoTime() - t;
+        }
+
+        logger.info(String.format("%,d recipes: built in %,d ms using ~%,d MB, %s; search p50 %.2f ms, p99 %.2f ms; " +
+                        "filtered search p50 %.2f ms, p99 %.2f ms", recipes, buildMillis, heapMegabytes,
+                index.getStats(), percentile(plain, 50), percentile(plain, 99), percentile(filtered, 50),
+                percentile(filtered, 99)));
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double percentile(long[] nanos, int percentile) {
+        long[] sorted = Arrays.copyOf(nanos, nanos.length);
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, sorted.length * percentile / 100)] / 1_000_000.0;
+    }
+}
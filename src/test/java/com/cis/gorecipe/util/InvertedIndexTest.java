@@ -0,0 +1,119 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvertedIndexTest {
+
+    private static InvertedIndex.Document recipe(long id, String name, String instructions, Integer prepTime) {
+        return new InvertedIndex.Document(id)
+                .text(name, 3)
+                .text(instructions, 1)
+                .prepTime(prepTime);
+    }
+
+    @Test
+    void testTokenize() {
+        assertEquals(List.of("tomato", "potato", "berry", "dish", "egg", "hummus", "glass"),
+                InvertedIndex.tokenize("Tomatoes, POTATOES and berries in a dish of eggs; hummus & glass!"));
+        assertTrue(InvertedIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    void testNameMatchesOutrankInstructionMatches() {
+
+        InvertedIndex index = new InvertedIndex();
+        index.put(recipe(1, "Garlic Bread", "Toast the bread and rub it with tomato.", 10));
+        index.put(recipe(2, "Tomato Soup", "Simmer the tomatoes with garlic.", 30));
+        index.put(recipe(3, "Pancakes", "Whisk the batter.", 20));
+
+        assertEquals(List.of(2L, 1L), index.search("tomato", null, null, 10));
+        assertEquals(List.of(1L, 2L), index.search("garlic", null, null, 10));
+        assertEquals(List.of(2L), index.search("tomato soup", null, null, 1));
+        assertTrue(index.search("lasagna", null, null, 10).isEmpty());
+    }
+
+    @Test
+    void testMinTermCoverage() {
+
+        InvertedIndex index = new InvertedIndex();
+        index.put(recipe(1, "Chocolate Cake", "Bake the batter.", 60).tag("diet", "vegan"));
+        index.put(recipe(2, "Vegan Chocolate Cake", null, 60));
+        index.put(recipe(3, "Chocolate Milk", null, 5));
+
+        assertEquals(3, index.search("vegan chocolate cake", null, null, 10).size());
+        assertEquals(List.of(2L), index.search("vegan chocolate cake", null, null, 10, 1));
+        assertEquals(List.of(2L, 1L), index.search("vegan chocolate cake", null, null, 10, 0.6));
+        assertTrue(index.search("chocolate lasagna", null, null, 10, 1).isEmpty());
+
+        /* the reused scores of one query don't leak into the next */
+        assertEquals(List.of(3L), index.search("milk", null, null, 10, 1));
+        assertEquals(index.search("vegan chocolate cake", null, null, 10),
+                index.search("vegan chocolate cake", null, null, 10));
+    }
+
+    @Test
+    void testFilters() {
+
+        InvertedIndex index = new InvertedIndex();
+        index.put(recipe(1, "Pasta Salad", null, 15).tag("cuisine", "Italian").tag("diet", "vegetarian"));
+        index.put(recipe(2, "Pasta Carbonara", null, 25).tag("cuisine", "italian"));
+        index.put(recipe(3, "Pasta Primavera", null, 40).tag("cuisine", "american").tag("diet", "vegetarian")
+                .tag("diet", "vegan"));
+        index.put(recipe(4, "Pasta Bake", null, null));
+
+        assertEquals(4, index.search("pasta", null, null, 10).size());
+        assertEquals(List.of(1L, 2L), index.search("pasta", 30, null, 10));
+
+        List<String> italianOrAmerican = List.of(InvertedIndex.tag("cuisine", "italian"),
+                InvertedIndex.tag("cuisine", "american"));
+        assertEquals(List.of(1L, 2L, 3L), index.search("pasta", null, List.of(italianOrAmerican), 10));
+
+        List<List<String>> vegetarianAndVegan = List.of(
+                List.of(InvertedIndex.tag("diet", "vegetarian")), List.of(InvertedIndex.tag("diet", "vegan")));
+        assertEquals(List.of(3L), index.search("pasta", null, vegetarianAndVegan, 10));
+    }
+
+    @Test
+    void testReplaceAndRemove() {
+
+        InvertedIndex index = new InvertedIndex();
+        index.put(recipe(1, "Tomato Soup", null, 30));
+
+        assertFalse(index.putIfAbsent(recipe(1, "Onion Soup", null, 30)));
+        assertEquals(List.of(1L), index.search("tomato", null, null, 10));
+
+        index.put(recipe(1, "Onion Soup", null, 30));
+        assertTrue(index.search("tomato", null, null, 10).isEmpty());
+        assertEquals(List.of(1L), index.search("onion", null, null, 10));
+
+        assertTrue(index.remove(1));
+        assertFalse(index.remove(1));
+        assertTrue(index.search("onion", null, null, 10).isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    void testCompaction() {
+
+        InvertedIndex index = new InvertedIndex();
+        for (long id = 0; id < 4000; id++)
+            index.put(recipe(id, "Recipe " + id, id % 2 == 0 ? "Even" : "Odd", 10));
+
+        for (long id = 0; id < 4000; id += 2)
+            index.remove(id);
+
+        assertTrue(index.getStats().get("compactions").longValue() > 0);
+        assertEquals(2000, index.size());
+        assertTrue(index.search("even", null, null, 10).isEmpty());
+        assertEquals(2000, index.search("odd", null, null, 5000).size());
+        assertEquals(Collections.singletonList(3999L), index.search("3999", null, null, 10));
+
+        index.put(recipe(4000, "Even More", null, 10));
+        assertEquals(List.of(4000L), index.search("even", null, null, 10));
+    }
+}
@@ -0,0 +1,71 @@
+package com.cis.gorecipe.util;
+
+import com.cis.gorecipe.model.RestrictionType;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RestrictionRulesTest {
+
+    @Test
+    void testDietsImplyRestrictions() {
+
+        RestrictionRules rules = new RestrictionRules(Collections.emptyMap());
+        int vegan = rules.classify("Vegan, gluten free", Collections.emptyList());
+
+        for (RestrictionType type : List.of(RestrictionType.VEGAN, RestrictionType.VEGETARIAN,
+                RestrictionType.PESCETARIAN, RestrictionType.DAIRY, RestrictionType.EGG, RestrictionType.GLUTEN,
+                RestrictionType.WHEAT))
+            assertNotEquals(0, vegan & type.getBit(), type.getLabel());
+
+        assertEquals(0, vegan & RestrictionType.PEANUT.getBit());
+        assertEquals(0, rules.classify(null, List.of("flour")));
+    }
+
+    @Test
+    void testDisallowedIngredients() {
+
+        RestrictionRules rules = new RestrictionRules(Map.of(
+                "Peanut", List.of("peanut butter", "Peanuts"),
+                "sesame", List.of("tahini"),
+                "not a restriction", List.of("flour")));
+
+        assertEquals(2, rules.size());
+
+        int satay = rules.classify(null, List.of("chicken", " PEANUT BUTTER "));
+        assertEquals(0, satay & RestrictionType.PEANUT.getBit());
+        assertEquals(RestrictionType.SESAME.getBit(), satay);
+
+        int hummus = rules.classify("vegan", List.of("chickpeas", "tahini"));
+        assertNotEquals(0, hummus & RestrictionType.PEANUT.getBit());
+        assertEquals(0, hummus & RestrictionType.SESAME.getBit());
+    }
+
+    @Test
+    void testKnownMask() {
+
+        int dietsOnly = new RestrictionRules(Collections.emptyMap()).getKnownMask();
+        assertNotEquals(0, dietsOnly & RestrictionType.VEGAN.getBit());
+        assertNotEquals(0, dietsOnly & RestrictionType.GLUTEN.getBit());
+
+        for (RestrictionType type : List.of(RestrictionType.PEANUT, RestrictionType.SESAME, RestrictionType.SEAFOOD,
+                RestrictionType.SHELLFISH, RestrictionType.SOY, RestrictionType.SULFITE, RestrictionType.TREE_NUT))
+            assertEquals(0, dietsOnly & type.getBit(), type.getLabel());
+
+        int withPeanut = new RestrictionRules(Map.of("peanut", List.of("peanuts"))).getKnownMask();
+        assertEquals(dietsOnly | RestrictionType.PEANUT.getBit(), withPeanut);
+    }
+
+    @Test
+    void testMaskOf() {
+
+        assertEquals(0, RestrictionType.maskOf(null));
+        assertEquals(RestrictionType.TREE_NUT.getBit() | RestrictionType.VEGAN.getBit(),
+                RestrictionType.maskOf(List.of("Tree Nut", "vegan", "unknown")));
+        assertEquals(0xFFFF, RestrictionType.ALL);
+    }
+}
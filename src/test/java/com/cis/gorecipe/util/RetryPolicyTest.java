@@ -0,0 +1,87 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RetryPolicyTest {
+
+    /**
+     * Retries IOExceptions, reading a requested delay out of the exception message
+     */
+    private RetryPolicy policy(int maxAttempts, double random) {
+        return new RetryPolicy(maxAttempts, 10, 100, 1000,
+                e -> e instanceof IOException,
+                e -> e.getMessage() != null && e.getMessage().startsWith("retry-after=")
+                        ? Long.parseLong(e.getMessage().substring("retry-after=".length())) : -1,
+                () -> random);
+    }
+
+    @Test
+    void testBackoff() {
+
+        RetryPolicy lowest = policy(5, 0);
+        RetryPolicy highest = policy(5, 1);
+
+        /* half of the exponential delay is fixed and the other half is jitter */
+        assertEquals(5, lowest.backoffMillis(1, -1));
+        assertEquals(10, highest.backoffMillis(1, -1));
+        assertEquals(20, lowest.backoffMillis(3, -1));
+        assertEquals(40, highest.backoffMillis(3, -1));
+
+        /* capped by the maximum delay */
+        assertEquals(100, highest.backoffMillis(10, -1));
+
+        /* Retry-After wins when it is longer, and makes us give up when it is longer than we will wait */
+        assertEquals(500, highest.backoffMillis(1, 500));
+        assertEquals(-1, highest.backoffMillis(1, 5000));
+    }
+
+    @Test
+    void testRetriesTransientFailures() {
+
+        RetryPolicy policy = policy(3, 0.5);
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = policy.execute(() -> attempts.incrementAndGet() < 3
+                ? CompletableFuture.<String>failedFuture(new IOException("timeout"))
+                : CompletableFuture.completedFuture("ok")).join();
+
+        assertEquals("ok", result);
+        assertEquals(3, attempts.get());
+        assertEquals(2L, policy.getStats().get("retries"));
+    }
+
+    @Test
+    void testGivesUp() {
+
+        RetryPolicy policy = policy(3, 0.5);
+        AtomicInteger attempts = new AtomicInteger();
+
+        CompletionException e = assertThrows(CompletionException.class, () -> policy.execute(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.<String>failedFuture(new IOException("timeout"));
+        }).join());
+
+        assertTrue(e.getCause() instanceof IOException);
+        assertEquals(3, attempts.get());
+        assertEquals(1L, policy.getStats().get("exhausted"));
+
+        /* failures that aren't retryable, or ask for too long a wait, are not retried */
+        attempts.set(0);
+        assertThrows(CompletionException.class, () -> policy.execute(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.<String>failedFuture(new IllegalStateException());
+        }).join());
+        assertThrows(CompletionException.class, () -> policy.execute(() -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.<String>failedFuture(new IOException("retry-after=60000"));
+        }).join());
+        assertEquals(2, attempts.get());
+    }
+}
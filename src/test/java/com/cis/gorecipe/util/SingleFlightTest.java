@@ -0,0 +1,84 @@
+package com.cis.gorecipe.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void testConcurrentCallsShareOneCall() {
+
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> remote = new CompletableFuture<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        CompletableFuture<String> first = flights.execute("q=pasta", () -> {
+            calls.incrementAndGet();
+            return remote;
+        });
+        CompletableFuture<String> second = flights.execute("q=pasta", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("second");
+        });
+
+        assertFalse(first.isDone());
+        assertFalse(second.isDone());
+
+        remote.complete("first");
+
+        assertEquals("first", first.join());
+        assertEquals("first", second.join());
+        assertEquals(1, calls.get());
+        assertEquals(1L, flights.getStats().get("shared"));
+        assertEquals(0, flights.getStats().get("inFlight"));
+
+        /* once the call has finished, the next caller starts a new one */
+        assertEquals("third", flights.execute("q=pasta", () -> CompletableFuture.completedFuture("third")).join());
+    }
+
+    @Test
+    void testFailureIsSharedAndNotRemembered() {
+
+        SingleFlight<String, String> flights = new SingleFlight<>();
+        CompletableFuture<String> remote = new CompletableFuture<>();
+
+        CompletableFuture<String> first = flights.execute("q", () -> remote);
+        CompletableFuture<String> second = flights.execute("q", () -> CompletableFuture.completedFuture("unused"));
+
+        remote.completeExceptionally(new IllegalStateException("quota"));
+
+        assertTrue(first.isCompletedExceptionally());
+        assertTrue(second.isCompletedExceptionally());
+        assertEquals("ok", flights.execute("q", () -> CompletableFuture.completedFuture("ok")).join());
+    }
+
+    @Test
+    void testExecuteAllOnlyFetchesKeysNotAlreadyInFlight() {
+
+        SingleFlight<Long, String> flights = new SingleFlight<>();
+        CompletableFuture<Map<Long, String>> firstBatch = new CompletableFuture<>();
+
+        CompletableFuture<Map<Long, String>> first = flights.executeAll(List.of(1L, 2L), ids -> firstBatch);
+
+        CompletableFuture<Map<Long, String>> second = flights.executeAll(List.of(2L, 3L), ids -> {
+            assertEquals(List.of(3L), ids);
+            return CompletableFuture.completedFuture(Map.of(3L, "three"));
+        });
+
+        assertFalse(second.isDone());
+
+        /* 1 has no value (e.g. a recipe without instructions), so it is left out of the results */
+        firstBatch.complete(Map.of(2L, "two"));
+
+        assertEquals(Map.of(2L, "two"), first.join());
+        assertEquals(Map.of(2L, "two", 3L, "three"), second.join());
+        assertEquals(2L, flights.getStats().get("calls"));
+        assertEquals(1L, flights.getStats().get("shared"));
+    }
+}
@@ -0,0 +1,226 @@
+package com.cis.gorecipe.util;
+
+import com.cis.gorecipe.model.Ingredient;
+import com.cis.gorecipe.model.Recipe;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpoonacularJsonParserTest {
+
+    private final Logger logger = LoggerFactory.getLogger(SpoonacularJsonParserTest.class);
+
+    /**
+     * @param recipes how many recipes the response should contain
+     * @return a synthetic informationBulk response, including the large subtrees (nutrition, analyzed
+     * instructions, wine pairing) that GoRecipe doesn't store
+     */
+    private byte[] informationBulkResponse(int recipes) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+            writer.beginArray();
+            for (int r = 0; r < recipes; r++) {
+                writer.beginObject();
+                writer.name("id").value(1000 + r);
+                writer.name("title").value("Recipe " + r);
+                writer.name("readyInMinutes").value(15 + r);
+                writer.name("sourceUrl").value("https://example.com/recipes/" + r);
+                writer.name("image").value(r % 5 == 0 ? null : "https://example.com/images/" + r + ".jpg");
+                writer.name("instructions").value(r == 3 ? null : "Step one. Step two. Step three for recipe " + r);
+                writer.name("summary").value("A long summary of recipe " + r + " ".repeat(500));
+
+                writer.name("extendedIngredients").beginArray();
+                for (int i = 0; i < 12; i++) {
+                    writer.beginObject();
+                    writer.name("id").value(i);
+                    writer.name("name").value("ingredient " + i);
+                    writer.name("original").value(i + " cups of ingredient " + i);
+                    writer.name("amount").value(i * 1.5);
+                    writer.name("measures").beginObject()
+                            .name("us").beginObject().name("amount").value(i).name("unitLong").value("cups").endObject()
+                            .name("metric").beginObject().name("amount").value(i * 240).name("unitLong").value("ml").endObject()
+                            .endObject();
+                    writer.endObject();
+                }
+                writer.endArray();
+
+                writer.name("nutrition").beginObject().name("nutrients").beginArray();
+                for (int n = 0; n < 40; n++) {
+                    writer.beginObject()
+                            .name("name").value("nutrient " + n)
+                            .name("amount").value(n * 3.7)
+                            .name("unit").value("g")
+                            .name("percentOfDailyNeeds").value(n * 0.9)
+                            .endObject();
+                }
+                writer.endArray().endObject();
+
+                writer.name("analyzedInstructions").beginArray().beginObject().name("steps").beginArray();
+                for (int s = 0; s < 10; s++) {
+                    writer.beginObject()
+                            .name("number").value(s)
+                            .name("step").value("Do step " + s + " of recipe " + r + " carefully.")
+                            .name("ingredients").beginArray()
+                            .beginObject().name("name").value("ingredient " + s).endObject()
+                            .endArray()
+                            .name("equipment").beginArray()
+                            .beginObject().name("name").value("pan").endObject()
+                            .endArray()
+                            .endObject();
+                }
+                writer.endArray().endObject().endArray();
+
+                writer.name("winePairing").beginObject()
+                        .name("pairedWines").beginArray().value("merlot").value("pinot noir").endArray()
+                        .name("pairingText").value("Pairs well with red wine. ".repeat(10))
+                        .endObject();
+
+                writer.endObject();
+            }
+            writer.endArray();
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * The tree based parsing that Spoonacular responses used to go through: buffer the body into a String,
+     * build the whole JsonElement tree, and then walk it
+     */
+    private List<Recipe> parseTree(byte[] body) {
+
+        JsonElement tree = new Gson().fromJson(new String(body, StandardCharsets.UTF_8), JsonElement.class);
+        List<Recipe> recipes = new ArrayList<>();
+
+        for (JsonElement e : tree.getAsJsonArray()) {
+            JsonObject result = e.getAsJsonObject();
+
+            if (result.get("instructions").isJsonNull())
+                continue;
+
+            Recipe recipe = new Recipe()
+                    .setName(result.get("title").getAsString())
+                    .setPrepTime(result.get("readyInMinutes").getAsInt())
+                    .setSpoonacularId(result.get("id").getAsLong())
+                    .setSourceURL(result.get("sourceUrl").getAsString())
+                    .setInstructions(result.get("instructions").getAsString());
+
+            if (!result.get("image").isJsonNull())
+                recipe.setImageURL(result.get("image").getAsString());
+
+            for (JsonElement i : result.get("extendedIngredients").getAsJsonArray()) {
+                JsonObject o = i.getAsJsonObject();
+                recipe.addIngredient(new Ingredient().setName(o.get("name").getAsString()));
+                recipe.getVerboseIngredients().add(o.get("original").getAsString());
+            }
+
+            recipes.add(recipe);
+        }
+
+        return recipes;
+    }
+
+    private List<Recipe> parseStream(byte[] body) throws IOException {
+
+        try (JsonReader reader = new JsonReader(
+                new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8))) {
+            return SpoonacularJsonParser.parseRecipes(reader);
+        }
+    }
+
+    /**
+     * Test whether the streaming parser produces the same recipes as the tree based parser
+     */
+    @Test
+    public void testParseRecipes() throws Exception {
+
+        byte[] body = informationBulkResponse(25);
+
+        List<Recipe> expected = parseTree(body);
+        List<Recipe> actual = parseStream(body);
+
+        assertEquals(24, actual.size()); /* one of the recipes has no instructions */
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            Recipe e = expected.get(i);
+            Recipe a = actual.get(i);
+
+            assertEquals(e.getSpoonacularId(), a.getSpoonacularId());
+            assertEquals(e.getName(), a.getName());
+            assertEquals(e.getPrepTime(), a.getPrepTime());
+            assertEquals(e.getSourceURL(), a.getSourceURL());
+            assertEquals(e.getImageURL(), a.getImageURL());
+            assertEquals(e.getInstructions(), a.getInstructions());
+            assertEquals(e.getVerboseIngredients(), a.getVerboseIngredients());
+            assertEquals(e.getIngredients().stream().map(Ingredient::getName).collect(Collectors.toList()),
+                    a.getIngredients().stream().map(Ingredient::getName).collect(Collectors.toList()));
+        }
+    }
+
+    /**
+     * Test whether the IDs of complexSearch results are read in order
+     */
+    @Test
+    public void testParseSearchResultIds() throws Exception {
+
+        String body = "{\"results\":[{\"id\":5,\"title\":\"a\"},{\"id\":3,\"image\":null}],\"offset\":0,\"totalResults\":2}";
+
+        try (JsonReader reader = new JsonReader(new StringReader(body))) {
+            assertEquals(List.of(5L, 3L), SpoonacularJsonParser.parseSearchResultIds(reader));
+        }
+    }
+
+    /**
+     * Benchmark the bytes allocated per informationBulk response by the streaming parser against the tree
+     * based parser it replaced
+     */
+    @Test
+    public void benchmarkAllocation() throws Exception {
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        byte[] body = informationBulkResponse(25);
+        int iterations = 200;
+
+        /* warm up both paths so that we measure steady state allocation */
+        for (int i = 0; i < iterations; i++) {
+            parseTree(body);
+            parseStream(body);
+        }
+
+        long start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++)
+            parseTree(body);
+        long tree = (threads.getThreadAllocatedBytes(thread) - start) / iterations;
+
+        start = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < iterations; i++)
+            parseStream(body);
+        long stream = (threads.getThreadAllocatedBytes(thread) - start) / iterations;
+
+        logger.info(String.format("informationBulk (%d bytes): tree %d bytes/op, streaming %d bytes/op (%.1f%%)",
+                body.length, tree, stream, 100.0 * stream / tree));
+
+        assertTrue(stream < tree);
+    }
+}